@@ -0,0 +1,63 @@
+package com.jackforbes.paymentscore.bench;
+
+import com.jackforbes.paymentscore.entity.Payment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+In-memory state transitions on the Payment entity, without any persistence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentDomainBenchmark {
+
+    private final Instant now = Instant.parse("2026-01-01T00:00:00Z");
+    private Payment payment;
+    private Payment captured;
+
+    @Setup
+    public void setUp() {
+        // large enough that repeated partial captures never complete the payment
+        payment = Payment.authorised(UUID.randomUUID(), Long.MAX_VALUE, "GBP", now);
+        // likewise, repeated partial refunds never use up what was captured
+        captured = Payment.authorised(UUID.randomUUID(), Long.MAX_VALUE, "GBP", now);
+        captured.capture(Long.MAX_VALUE / 2, now);
+    }
+
+    @Benchmark
+    public Payment capture() {
+        payment.capture(1, now);
+        return payment;
+    }
+
+    @Benchmark
+    public Payment refund() {
+        captured.refund(1, now);
+        return captured;
+    }
+
+    @Benchmark
+    public Payment authoriseCaptureRefund() {
+        Payment p = Payment.authorised(UUID.randomUUID(), 1_000, "GBP", now);
+        p.capture(600, now);
+        p.capture(400, now);
+        p.refund(250, now);
+        return p;
+    }
+}
@@ -0,0 +1,134 @@
+package com.jackforbes.paymentscore.bench;
+
+import com.jackforbes.paymentscore.service.PaymentIdGenerator;
+import com.jackforbes.paymentscore.service.RandomPaymentIdGenerator;
+import com.jackforbes.paymentscore.service.UuidV7PaymentIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+Insert rate into a copy of the payments table that already holds `rows` payments, with random (v4)
+versus time-ordered (v7) primary keys. Random keys touch a different index leaf per row, so once the
+index outgrows shared_buffers each insert reads and dirties its own page (and writes a full-page image
+to WAL after a checkpoint); v7 keys append to the rightmost leaf.
+
+Scores are rows/s. WAL bytes per inserted row are printed at the end of each trial.
+The prefill takes a while; pick rows larger than shared_buffers to see the difference:
+  ./mvnw -Pjmh test-compile exec:exec -Djmh.args="PaymentIdInsert -p rows=5000000"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)
+public class PaymentIdInsertBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final String INSERT = """
+            INSERT INTO %s (id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version)
+            VALUES (?, 1000, 'GBP', 'AUTHORISED', 0, 0, ?, ?, 0)
+            """;
+
+    @Param({"RANDOM", "UUID_V7"})
+    public String generator;
+
+    @Param("2000000")
+    public int rows;
+
+    private PaymentIdGenerator ids;
+    private Connection connection;
+    private PreparedStatement insert;
+    private String table;
+    private long walStart;
+    private long inserted;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        ids = generator.equals("RANDOM") ? new RandomPaymentIdGenerator() : new UuidV7PaymentIdGenerator(Clock.systemUTC());
+        table = "bench_payments_" + generator.toLowerCase();
+
+        Properties props = new Properties();
+        props.setProperty("user", System.getProperty("bench.jdbc.username", "payments"));
+        props.setProperty("password", System.getProperty("bench.jdbc.password", "payments"));
+        props.setProperty("reWriteBatchedInserts", "true");
+        connection = DriverManager.getConnection(System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5433/payments"), props);
+
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + table);
+            st.execute("CREATE TABLE " + table + " (LIKE payments INCLUDING ALL)");
+        }
+        insert = connection.prepareStatement(INSERT.formatted(table));
+        for (int i = 0; i < rows; i += BATCH) {
+            insertBatch();
+        }
+        try (Statement st = connection.createStatement()) {
+            st.execute("VACUUM ANALYZE " + table);
+            st.execute("CHECKPOINT");
+        }
+        walStart = walPosition();
+        inserted = 0;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        long wal = walPosition() - walStart;
+        System.out.printf("%n%s: %d rows inserted, %.0f WAL bytes/row%n", generator, inserted, (double) wal / Math.max(1, inserted));
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE " + table);
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void insert() throws SQLException {
+        insertBatch();
+        inserted += BATCH;
+    }
+
+    private void insertBatch() throws SQLException {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        for (int i = 0; i < BATCH; i++) {
+            insert.setObject(1, ids.next());
+            insert.setObject(2, now);
+            insert.setObject(3, now);
+            insert.addBatch();
+        }
+        insert.executeBatch();
+    }
+
+    private long walPosition() throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT pg_current_wal_lsn() - '0/0'")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
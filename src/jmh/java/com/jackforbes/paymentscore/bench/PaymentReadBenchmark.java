@@ -0,0 +1,81 @@
+package com.jackforbes.paymentscore.bench;
+
+import com.jackforbes.paymentscore.PaymentscoreApplication;
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.repo.PaymentRepository;
+import com.jackforbes.paymentscore.service.PaymentService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+Reading one payment into a PaymentResponse against a real PostgreSQL, the way GET /payments/{id} did
+before (read-only JPA transaction, managed entity, then copy) versus the JDBC projection it uses now.
+Same database settings as PaymentServiceBenchmark. Run with -prof gc for allocation per read:
+  ./mvnw -Pjmh test-compile exec:exec -Djmh.args="PaymentRead -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class PaymentReadBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private PaymentRepository repository;
+    private TransactionTemplate readOnlyTransaction;
+    private UUID paymentId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = new SpringApplicationBuilder(PaymentscoreApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5433/payments"),
+                        "spring.datasource.username=" + System.getProperty("bench.jdbc.username", "payments"),
+                        "spring.datasource.password=" + System.getProperty("bench.jdbc.password", "payments"),
+                        "spring.docker.compose.enabled=false",
+                        "logging.level.root=WARN"
+                )
+                .run();
+        repository = context.getBean(PaymentRepository.class);
+        readOnlyTransaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnlyTransaction.setReadOnly(true);
+        paymentId = context.getBean(PaymentService.class).authorise(1234, "GBP").getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public PaymentResponse entity() {
+        return readOnlyTransaction.execute(tx -> PaymentResponse.from(repository.findById(paymentId).orElseThrow()));
+    }
+
+    @Benchmark
+    public PaymentResponse projection() {
+        return repository.findResponseById(paymentId).orElseThrow();
+    }
+}
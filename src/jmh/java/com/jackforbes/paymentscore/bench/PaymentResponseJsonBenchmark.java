@@ -0,0 +1,51 @@
+package com.jackforbes.paymentscore.bench;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.entity.PaymentState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+Serialising the response body every payment endpoint returns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentResponseJsonBenchmark {
+
+    private final JsonMapper mapper = JsonMapper.builder().build();
+    private PaymentResponse response;
+
+    @Setup
+    public void setUp() {
+        Instant now = Instant.parse("2026-02-16T18:39:29.123456Z");
+        response = new PaymentResponse(UUID.randomUUID(), 1234, "GBP", PaymentState.PARTIALLY_CAPTURED,
+                600, 100, now, now, 1);
+    }
+
+    @Benchmark
+    public byte[] serialiseToBytes() {
+        return mapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public String serialiseToString() {
+        return mapper.writeValueAsString(response);
+    }
+}
@@ -0,0 +1,98 @@
+package com.jackforbes.paymentscore.bench;
+
+import com.jackforbes.paymentscore.PaymentscoreApplication;
+import com.jackforbes.paymentscore.entity.Payment;
+import com.jackforbes.paymentscore.service.CaptureResult;
+import com.jackforbes.paymentscore.service.PaymentService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+End-to-end PaymentService.capture against a real PostgreSQL (Flyway runs on startup).
+Defaults to the compose.yaml database; point elsewhere with -Dbench.jdbc.url / -Dbench.jdbc.username /
+-Dbench.jdbc.password, passed through jmh.args as -jvmArgsAppend.
+
+ownPayment: every thread captures its own payment, so this is the uncontended round-trip cost.
+hotPayment: all threads capture the same payment, which serialises on its row.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(8)
+public class PaymentServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class App {
+
+        ConfigurableApplicationContext context;
+        PaymentService paymentService;
+        UUID hotPaymentId;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = new SpringApplicationBuilder(PaymentscoreApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .properties(
+                            "spring.datasource.url=" + System.getProperty("bench.jdbc.url", "jdbc:postgresql://localhost:5433/payments"),
+                            "spring.datasource.username=" + System.getProperty("bench.jdbc.username", "payments"),
+                            "spring.datasource.password=" + System.getProperty("bench.jdbc.password", "payments"),
+                            "spring.docker.compose.enabled=false",
+                            "logging.level.root=WARN"
+                    )
+                    .run();
+            paymentService = context.getBean(PaymentService.class);
+            hotPaymentId = authoriseLarge(paymentService);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        UUID ownPaymentId;
+
+        @Setup(Level.Trial)
+        public void authorise(App app) {
+            ownPaymentId = authoriseLarge(app.paymentService);
+        }
+    }
+
+    @Benchmark
+    public CaptureResult ownPayment(App app, Client client) {
+        return app.paymentService.capture(client.ownPaymentId, "bench", UUID.randomUUID().toString(), 1);
+    }
+
+    @Benchmark
+    public CaptureResult hotPayment(App app) {
+        return app.paymentService.capture(app.hotPaymentId, "bench", UUID.randomUUID().toString(), 1);
+    }
+
+    // big enough that a whole run of 1-unit captures never exhausts it
+    private static UUID authoriseLarge(PaymentService paymentService) {
+        Payment payment = paymentService.authorise(Long.MAX_VALUE / 2, "GBP");
+        return payment.getId();
+    }
+}
@@ -0,0 +1,65 @@
+package com.jackforbes.paymentscore.bench;
+
+import com.jackforbes.paymentscore.service.RequestHasher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+Request hashing: the original canonical-String + getInstance + hex path against RequestHasher.
+Run with -prof gc to compare allocation per operation:
+  ./mvnw -Pjmh test-compile exec:exec -Djmh.args="RequestHash -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RequestHashBenchmark {
+
+    private final RequestHasher hasher = new RequestHasher();
+    private UUID paymentId;
+    private long amount;
+
+    @Setup
+    public void setUp() throws Exception {
+        paymentId = UUID.randomUUID();
+        amount = 123_456;
+
+        // both paths must agree, otherwise stored keys would stop replaying
+        byte[] legacy = HexFormat.of().parseHex(legacyHash());
+        if (!Arrays.equals(legacy, pooledHash())) {
+            throw new IllegalStateException("RequestHasher disagrees with the canonical string hash");
+        }
+    }
+
+    @Benchmark
+    public String legacyHash() throws Exception {
+        String canonical = "CAPTURE|paymentId=" + paymentId + "|amount=" + amount;
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] hash = digest.digest(canonical.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(hash);
+    }
+
+    @Benchmark
+    public byte[] pooledHash() {
+        return hasher.hash(RequestHasher.Operation.CAPTURE, paymentId, amount);
+    }
+}
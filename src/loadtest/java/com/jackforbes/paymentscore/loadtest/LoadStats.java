@@ -0,0 +1,92 @@
+package com.jackforbes.paymentscore.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Latency histograms (microseconds) and response status counts per operation.
+Status -1 stands for requests that failed without a response (timeouts, connection errors).
+ */
+class LoadStats {
+
+    static final int IO_ERROR = -1;
+
+    private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, ConcurrentHashMap<Integer, LongAdder>> statuses = new EnumMap<>(Operation.class);
+
+    LoadStats() {
+        for (Operation op : Operation.values()) {
+            latencies.put(op, new ConcurrentHistogram(3));
+            statuses.put(op, new ConcurrentHashMap<>());
+        }
+    }
+
+    void record(Operation op, int status, long latencyNanos) {
+        latencies.get(op).recordValue(Math.max(1, latencyNanos / 1_000));
+        statuses.get(op).computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    void report(PrintStream out, Duration measured) {
+        double seconds = measured.toMillis() / 1000.0;
+        long total = 0;
+
+        out.printf("%-10s %9s %9s %9s %9s %9s %9s %9s  %s%n",
+                "op", "count", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "statuses");
+        for (Operation op : Operation.values()) {
+            Histogram h = latencies.get(op);
+            long count = h.getTotalCount();
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            out.printf("%-10s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                    op.name().toLowerCase(), count, count / seconds,
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)),
+                    ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()),
+                    statusSummary(op));
+        }
+        out.printf("%ntotal %d requests in %.1fs = %.1f req/s%n", total, seconds, total / seconds);
+    }
+
+    // full percentile distributions, loadable in the HdrHistogram plotter
+    void writeDistributions(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Operation op : Operation.values()) {
+            Histogram h = latencies.get(op);
+            if (h.getTotalCount() == 0) {
+                continue;
+            }
+            try (PrintStream file = new PrintStream(Files.newOutputStream(dir.resolve(op.name().toLowerCase() + ".hgrm")))) {
+                h.outputPercentileDistribution(file, 1000.0);
+            }
+        }
+    }
+
+    private String statusSummary(Operation op) {
+        Map<Integer, Long> sorted = new TreeMap<>();
+        statuses.get(op).forEach((status, count) -> sorted.put(status, count.sum()));
+        StringBuilder sb = new StringBuilder();
+        sorted.forEach((status, count) -> {
+            if (!sb.isEmpty()) {
+                sb.append(' ');
+            }
+            sb.append(status == IO_ERROR ? "io-error" : status).append('=').append(count);
+        });
+        return sb.toString();
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+}
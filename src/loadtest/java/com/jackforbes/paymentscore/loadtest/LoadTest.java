@@ -0,0 +1,255 @@
+package com.jackforbes.paymentscore.loadtest;
+
+import com.jackforbes.paymentscore.PaymentscoreApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+Closed-loop load generator for the REST API. Each of `concurrency` clients sends one request at a time,
+picking the operation by the configured mix:
+
+  authorise  new payment
+  capture    1 unit against a capture payment; hotRatio of them go to the hotPayments set, the rest
+             spread over coldPayments, so hot-row contention can be dialled up and down
+  refund     1 unit against a fully captured payment (captures aren't allowed after a refund)
+  replay     an earlier successful capture sent again with the same Idempotency-Key
+
+Latencies recorded after the warmup are reported as percentiles per operation, with status counts, and
+written as .hgrm files to the output directory.
+
+  ./mvnw -Ploadtest test-compile exec:java -Dloadtest.args="duration=60s concurrency=128"
+ */
+public class LoadTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"([^\"]+)\"");
+    private static final long LARGE_AMOUNT = 1_000_000_000L;
+    private static final int REPLAY_RING = 4096;
+
+    private record SentCapture(String paymentId, String idempotencyKey) {}
+
+    private final LoadTestConfig config;
+    private final HttpClient http;
+    private final URI base;
+    private final LoadStats stats = new LoadStats();
+
+    private final Operation[] weighted;
+    private final List<String> hotPayments = new ArrayList<>();
+    private final List<String> coldPayments = new ArrayList<>();
+    private final List<String> refundPayments = new ArrayList<>();
+    private final AtomicReferenceArray<SentCapture> sentCaptures = new AtomicReferenceArray<>(REPLAY_RING);
+    private final AtomicLong sentCount = new AtomicLong();
+
+    LoadTest(LoadTestConfig config, URI base) {
+        this.config = config;
+        this.base = base;
+        this.http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.weighted = weighted(config.mix());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.parse(args);
+
+        ConfigurableApplicationContext app = null;
+        URI base;
+        if (config.target() != null) {
+            base = URI.create(config.target());
+        } else {
+            app = startApplication(config);
+            base = URI.create("http://localhost:" + app.getEnvironment().getProperty("local.server.port"));
+        }
+
+        try {
+            new LoadTest(config, base).run();
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+    }
+
+    void run() throws Exception {
+        System.out.printf("target %s, %d clients, mix %s, %d hot / %d cold payments, hotRatio %.2f, profiles [%s]%n",
+                base, config.concurrency(), config.mix(), config.hotPayments(), config.coldPayments(), config.hotRatio(),
+                config.appProfiles());
+
+        prepare();
+
+        long start = System.nanoTime();
+        long measureFrom = start + config.warmup().toNanos();
+        long end = measureFrom + config.duration().toNanos();
+
+        // a client that dies on an unexpected exception fails the run rather than quietly lowering the load
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < config.concurrency(); i++) {
+                running.add(clients.submit(() -> client(measureFrom, end)));
+            }
+            for (Future<?> client : running) {
+                client.get();
+            }
+        }
+
+        stats.report(System.out, config.duration());
+        stats.writeDistributions(config.outputDir());
+        System.out.println("histograms written to " + config.outputDir().toAbsolutePath());
+    }
+
+    private void prepare() throws Exception {
+        for (int i = 0; i < config.hotPayments(); i++) {
+            hotPayments.add(authorise(LARGE_AMOUNT));
+        }
+        for (int i = 0; i < config.coldPayments(); i++) {
+            coldPayments.add(authorise(LARGE_AMOUNT));
+        }
+        for (int i = 0; i < config.refundPayments(); i++) {
+            String id = authorise(LARGE_AMOUNT);
+            int status = send(capture(id, UUID.randomUUID().toString(), LARGE_AMOUNT)).statusCode();
+            if (status != 200) {
+                throw new IllegalStateException("could not capture refund payment " + id + ": " + status);
+            }
+            refundPayments.add(id);
+        }
+    }
+
+    private void client(long measureFrom, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            Operation op = weighted[random.nextInt(weighted.length)];
+            int status;
+            try {
+                status = execute(op, random);
+            } catch (IOException e) {
+                status = LoadStats.IO_ERROR;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (now >= measureFrom) {
+                stats.record(op, status, System.nanoTime() - now);
+            }
+        }
+    }
+
+    private int execute(Operation op, ThreadLocalRandom random) throws IOException, InterruptedException {
+        return switch (op) {
+            case AUTHORISE -> send(authoriseRequest(1_000)).statusCode();
+            case CAPTURE -> freshCapture(random);
+            case REFUND -> send(refund(refundPayments.get(random.nextInt(refundPayments.size())))).statusCode();
+            case REPLAY -> {
+                long sent = sentCount.get();
+                if (sent == 0) {
+                    yield freshCapture(random);
+                }
+                SentCapture previous = sentCaptures.get((int) (random.nextLong(Math.min(sent, REPLAY_RING))));
+                yield previous == null
+                        ? freshCapture(random)
+                        : send(capture(previous.paymentId(), previous.idempotencyKey(), 1)).statusCode();
+            }
+        };
+    }
+
+    private int freshCapture(ThreadLocalRandom random) throws IOException, InterruptedException {
+        String paymentId = !hotPayments.isEmpty() && (coldPayments.isEmpty() || random.nextDouble() < config.hotRatio())
+                ? hotPayments.get(random.nextInt(hotPayments.size()))
+                : coldPayments.get(random.nextInt(coldPayments.size()));
+        String key = UUID.randomUUID().toString();
+
+        int status = send(capture(paymentId, key, 1)).statusCode();
+        if (status == 200) {
+            sentCaptures.set((int) (sentCount.getAndIncrement() % REPLAY_RING), new SentCapture(paymentId, key));
+        }
+        return status;
+    }
+
+    private String authorise(long amount) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(authoriseRequest(amount));
+        if (response.statusCode() != 201) {
+            throw new IllegalStateException("authorise failed: " + response.statusCode() + " " + response.body());
+        }
+        Matcher m = ID.matcher(response.body());
+        if (!m.find()) {
+            throw new IllegalStateException("no id in " + response.body());
+        }
+        return m.group(1);
+    }
+
+    private HttpRequest authoriseRequest(long amount) {
+        return post("/payments/authorise", null, """
+                {"amount":%d,"currency":"GBP"}""".formatted(amount));
+    }
+
+    private HttpRequest capture(String paymentId, String idempotencyKey, long amount) {
+        return post("/payments/" + paymentId + "/capture", idempotencyKey, """
+                {"amount":%d}""".formatted(amount));
+    }
+
+    private HttpRequest refund(String paymentId) {
+        return post("/payments/" + paymentId + "/refund", UUID.randomUUID().toString(), """
+                {"amount":1}""");
+    }
+
+    private HttpRequest post(String path, String idempotencyKey, String body) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (idempotencyKey != null) {
+            builder.header("X-Client-Id", "loadtest").header("Idempotency-Key", idempotencyKey);
+        }
+        return builder.build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Operation[] weighted(Map<Operation, Integer> mix) {
+        List<Operation> ops = new ArrayList<>();
+        mix.forEach((op, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                ops.add(op);
+            }
+        });
+        if (ops.isEmpty()) {
+            throw new IllegalArgumentException("mix has no operations");
+        }
+        return ops.toArray(Operation[]::new);
+    }
+
+    private static ConfigurableApplicationContext startApplication(LoadTestConfig config) {
+        return new SpringApplicationBuilder(PaymentscoreApplication.class)
+                .profiles(config.appProfiles().isBlank() ? new String[0] : config.appProfiles().split(","))
+                .properties(
+                        "server.port=0",
+                        "spring.datasource.url=" + config.jdbcUrl(),
+                        "spring.datasource.username=" + config.jdbcUsername(),
+                        "spring.datasource.password=" + config.jdbcPassword(),
+                        "spring.docker.compose.enabled=false",
+                        "logging.level.root=WARN"
+                )
+                .run();
+    }
+}
@@ -0,0 +1,102 @@
+package com.jackforbes.paymentscore.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Settings for a load test run, parsed from key=value arguments, e.g.
+
+  duration=60s warmup=10s concurrency=128 mix=authorise:1,capture:6,refund:2,replay:1 hotPayments=5 hotRatio=0.9
+
+Without target= an application is started in-process against the database given by jdbcUrl, with the
+Spring profiles given by profiles= (e.g. profiles=virtual to compare virtual and platform threads).
+ */
+record LoadTestConfig(
+        String target,
+        Duration duration,
+        Duration warmup,
+        int concurrency,
+        Map<Operation, Integer> mix,
+        int coldPayments,
+        int hotPayments,
+        double hotRatio,
+        int refundPayments,
+        String jdbcUrl,
+        String jdbcUsername,
+        String jdbcPassword,
+        String appProfiles,
+        Path outputDir
+) {
+
+    // every operation in the mix needs payments to work on, or each client would fail its first pick
+    LoadTestConfig {
+        if (weight(mix, Operation.REFUND) > 0 && refundPayments < 1) {
+            throw new IllegalArgumentException("mix has refund but refundPayments is " + refundPayments);
+        }
+        if ((weight(mix, Operation.CAPTURE) > 0 || weight(mix, Operation.REPLAY) > 0) && hotPayments + coldPayments < 1) {
+            throw new IllegalArgumentException("mix has capture or replay but hotPayments and coldPayments are both 0");
+        }
+    }
+
+    static LoadTestConfig parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            for (String token : arg.trim().split("\\s+")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                int eq = token.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("expected key=value, got " + token);
+                }
+                values.put(token.substring(0, eq), token.substring(eq + 1));
+            }
+        }
+
+        return new LoadTestConfig(
+                values.get("target"),
+                duration(values.getOrDefault("duration", "30s")),
+                duration(values.getOrDefault("warmup", "5s")),
+                Integer.parseInt(values.getOrDefault("concurrency", "32")),
+                mix(values.getOrDefault("mix", "authorise:1,capture:6,refund:2,replay:1")),
+                Integer.parseInt(values.getOrDefault("coldPayments", "1000")),
+                Integer.parseInt(values.getOrDefault("hotPayments", "10")),
+                Double.parseDouble(values.getOrDefault("hotRatio", "0.5")),
+                Integer.parseInt(values.getOrDefault("refundPayments", "100")),
+                values.getOrDefault("jdbcUrl", "jdbc:postgresql://localhost:5433/payments"),
+                values.getOrDefault("jdbcUsername", "payments"),
+                values.getOrDefault("jdbcPassword", "payments"),
+                values.getOrDefault("profiles", ""),
+                Path.of(values.getOrDefault("out", "target/loadtest"))
+        );
+    }
+
+    // 30s, 2m, 500ms
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        long amount = Long.parseLong(value.substring(0, value.length() - 1));
+        return switch (value.charAt(value.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            default -> throw new IllegalArgumentException("unsupported duration " + value);
+        };
+    }
+
+    private static int weight(Map<Operation, Integer> mix, Operation op) {
+        return mix.getOrDefault(op, 0);
+    }
+
+    private static Map<Operation, Integer> mix(String value) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] kv = part.split(":");
+            weights.put(Operation.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return weights;
+    }
+}
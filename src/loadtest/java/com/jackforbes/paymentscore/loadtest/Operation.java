@@ -0,0 +1,9 @@
+package com.jackforbes.paymentscore.loadtest;
+
+enum Operation {
+    AUTHORISE,
+    CAPTURE,
+    REFUND,
+    // resends an earlier successful capture with the same Idempotency-Key
+    REPLAY
+}
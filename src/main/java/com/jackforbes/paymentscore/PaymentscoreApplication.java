@@ -2,8 +2,10 @@ package com.jackforbes.paymentscore;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class PaymentscoreApplication {
 
 	public static void main(String[] args) {
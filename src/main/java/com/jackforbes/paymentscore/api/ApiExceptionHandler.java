@@ -4,24 +4,37 @@ import com.jackforbes.paymentscore.service.IdempotencyMismatchException;
 import com.jackforbes.paymentscore.service.InvalidInputException;
 import com.jackforbes.paymentscore.service.InvalidTransitionException;
 import com.jackforbes.paymentscore.service.PaymentNotFoundException;
+import com.jackforbes.paymentscore.service.TooManySubscribersException;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 @RestControllerAdvice
 public class ApiExceptionHandler {
 
+    private final MeterRegistry registry;
+
+    public ApiExceptionHandler(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
     @ExceptionHandler(PaymentNotFoundException.class)
     public ProblemDetail handleNotFound(PaymentNotFoundException ex, HttpServletRequest request) {
         ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.NOT_FOUND);
         pd.setTitle("Not Found");
         pd.setDetail(ex.getMessage());
         pd.setProperty("path", request.getRequestURI());
-        return pd;
+        return counted(pd);
     }
 
     @ExceptionHandler(InvalidTransitionException.class)
@@ -31,7 +44,7 @@ public class ApiExceptionHandler {
         pd.setDetail(ex.getMessage());
         pd.setProperty("code", "INVALID_TRANSITION");
         pd.setProperty("path", request.getRequestURI());
-        return pd;
+        return counted(pd);
     }
 
     @ExceptionHandler(InvalidInputException.class)
@@ -41,7 +54,7 @@ public class ApiExceptionHandler {
         pd.setDetail(ex.getMessage());
         pd.setProperty("code", "INVALID_INPUT");
         pd.setProperty("path", request.getRequestURI());
-        return pd;
+        return counted(pd);
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
@@ -53,7 +66,18 @@ public class ApiExceptionHandler {
         pd.setProperty("errors", ex.getBindingResult().getFieldErrors().stream()
                 .map(err -> err.getField() + ": " + err.getDefaultMessage())
                 .toList());
-        return pd;
+        return counted(pd);
+    }
+
+    // a query parameter or path variable that doesn't convert, e.g. an unknown state
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ProblemDetail handleTypeMismatch(MethodArgumentTypeMismatchException ex, HttpServletRequest request) {
+        ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.BAD_REQUEST);
+        pd.setTitle("Invalid input");
+        pd.setDetail(ex.getName() + ": invalid value '" + ex.getValue() + "'");
+        pd.setProperty("code", "INVALID_INPUT");
+        pd.setProperty("path", request.getRequestURI());
+        return counted(pd);
     }
 
     @ExceptionHandler(IdempotencyMismatchException.class)
@@ -63,7 +87,7 @@ public class ApiExceptionHandler {
         pd.setDetail(ex.getMessage());
         pd.setProperty("code", "IDEMPOTENCY_KEY_REUSED");
         pd.setProperty("path", request.getRequestURI());
-        return pd;
+        return counted(pd);
     }
 
     @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
@@ -73,6 +97,45 @@ public class ApiExceptionHandler {
         pd.setDetail("The payment was modified by another request. Please retry.");
         pd.setProperty("code", "CONCURRENT_MODIFICATION");
         pd.setProperty("path", request.getRequestURI());
+        return counted(pd);
+    }
+
+    /*
+    No connection within the pool's connection-timeout, e.g. more parked virtual threads than the pool can serve.
+    Transactional calls see it as CannotCreateTransactionException, plain JdbcTemplate reads (get, conditional
+    get, history) as CannotGetJdbcConnectionException.
+     */
+    @ExceptionHandler({CannotCreateTransactionException.class, CannotGetJdbcConnectionException.class})
+    public ResponseEntity<ProblemDetail> handleNoConnection(Exception ex, HttpServletRequest request) {
+        ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.SERVICE_UNAVAILABLE);
+        pd.setTitle("Service busy");
+        pd.setDetail("No database connection became available in time. Please retry.");
+        pd.setProperty("code", "DATABASE_BUSY");
+        pd.setProperty("path", request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(counted(pd));
+    }
+
+    @ExceptionHandler(TooManySubscribersException.class)
+    public ResponseEntity<ProblemDetail> handleTooManySubscribers(TooManySubscribersException ex, HttpServletRequest request) {
+        ProblemDetail pd = ProblemDetail.forStatus(HttpStatus.SERVICE_UNAVAILABLE);
+        pd.setTitle("Service busy");
+        pd.setDetail(ex.getMessage());
+        pd.setProperty("code", "TOO_MANY_SUBSCRIBERS");
+        pd.setProperty("path", request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(counted(pd));
+    }
+
+    // payments.api.errors{status, code}: every problem response, whichever handler produced it
+    private ProblemDetail counted(ProblemDetail pd) {
+        Object code = pd.getProperties() == null ? null : pd.getProperties().get("code");
+        registry.counter("payments.api.errors",
+                "status", Integer.toString(pd.getStatus()),
+                "code", code == null ? "NONE" : code.toString()
+        ).increment();
         return pd;
     }
 
@@ -0,0 +1,12 @@
+package com.jackforbes.paymentscore.api;
+
+import jakarta.validation.constraints.NotEmpty;
+
+import java.util.List;
+
+// items are validated one by one, so a bad item is reported without failing the rest
+public record BatchAuthoriseRequest(
+
+    @NotEmpty List<AuthorisePaymentRequest> items
+
+) {}
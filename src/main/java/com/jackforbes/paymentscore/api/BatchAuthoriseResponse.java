@@ -0,0 +1,12 @@
+package com.jackforbes.paymentscore.api;
+
+import java.util.List;
+
+/*
+Per-item results in request order. status is 201 for a stored payment, 400 for an item that failed
+validation and 503 for a valid item whose chunk couldn't be stored.
+ */
+public record BatchAuthoriseResponse(int created, int rejected, int failed, List<Item> items) {
+
+    public record Item(int index, int status, PaymentResponse payment, List<String> errors) {}
+}
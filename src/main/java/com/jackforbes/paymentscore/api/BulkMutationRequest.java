@@ -0,0 +1,24 @@
+package com.jackforbes.paymentscore.api;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+import java.util.UUID;
+
+/*
+DTO for bulk capture/refund; every item carries its own Idempotency-Key and is validated on its own
+ */
+public record BulkMutationRequest(
+
+    @NotEmpty List<Item> items
+
+) {
+    public record Item(
+            @NotNull UUID paymentId,
+            @NotBlank String idempotencyKey,
+            @Min(1) long amount
+    ) {}
+}
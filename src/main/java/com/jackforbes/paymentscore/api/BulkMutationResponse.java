@@ -0,0 +1,21 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.service.BulkItemResult;
+
+import java.util.List;
+
+/*
+Per-item results in request order. outcome is FRESH, REPLAY or REJECTED; a rejected item carries the
+status and code the single-item endpoint would have answered with, or 400 VALIDATION_ERROR.
+ */
+public record BulkMutationResponse(int fresh, int replayed, int rejected, List<Item> items) {
+
+    public record Item(
+            int index,
+            BulkItemResult.Outcome outcome,
+            int status,
+            PaymentResponse payment,
+            String code,
+            List<String> errors
+    ) {}
+}
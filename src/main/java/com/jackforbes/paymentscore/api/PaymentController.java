@@ -1,46 +1,139 @@
 package com.jackforbes.paymentscore.api;
 
+import com.jackforbes.paymentscore.config.PaymentExportProperties;
 import com.jackforbes.paymentscore.entity.Payment;
+import com.jackforbes.paymentscore.entity.PaymentState;
+import com.jackforbes.paymentscore.repo.PaymentListing;
+import com.jackforbes.paymentscore.service.AuthoriseBatchItem;
+import com.jackforbes.paymentscore.service.BulkItem;
+import com.jackforbes.paymentscore.service.BulkItemResult;
+import com.jackforbes.paymentscore.service.BulkPaymentService;
 import com.jackforbes.paymentscore.service.CaptureResult;
+import com.jackforbes.paymentscore.service.PaymentEventBus;
 import com.jackforbes.paymentscore.service.PaymentService;
 import com.jackforbes.paymentscore.service.RefundResult;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/payments")
 public class PaymentController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final PaymentService paymentService;
+    private final BulkPaymentService bulkPaymentService;
+    private final PaymentEventBus eventBus;
+    private final PaymentEventStreamer eventStreamer;
+    private final Validator validator;
+    private final ObjectWriter exportWriter;
+    private final int exportFlushEvery;
 
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(
+            PaymentService paymentService,
+            BulkPaymentService bulkPaymentService,
+            PaymentEventBus eventBus,
+            PaymentEventStreamer eventStreamer,
+            Validator validator,
+            JsonMapper jsonMapper,
+            PaymentExportProperties exportProperties
+    ) {
         this.paymentService = paymentService;
+        this.bulkPaymentService = bulkPaymentService;
+        this.eventBus = eventBus;
+        this.eventStreamer = eventStreamer;
+        this.validator = validator;
+        this.exportWriter = jsonMapper.writerFor(PaymentResponse.class);
+        this.exportFlushEvery = exportProperties.fetchSize();
     }
 
     @PostMapping("/authorise")
     @ResponseStatus(HttpStatus.CREATED)
     public PaymentResponse authorise(@Valid @RequestBody AuthorisePaymentRequest request) {
         Payment payment = paymentService.authorise(request.amount(), request.currency());
-        return new PaymentResponse(
-                payment.getId(),
-                payment.getAmount(),
-                payment.getCurrency(),
-                payment.getState(),
-                payment.getCapturedAmount(),
-                payment.getRefundedAmount(),
-                payment.getCreatedAt(),
-                payment.getUpdatedAt()
-        );
+        return PaymentResponse.from(payment);
+    }
+
+    @PostMapping("/authorise:batch")
+    public BatchAuthoriseResponse authoriseBatch(@Valid @RequestBody BatchAuthoriseRequest request) {
+        // the whole request counts towards the cap, invalid items included
+        paymentService.checkBatchSize(request.items().size());
+        List<List<String>> errors = validateEach(request.items());
+        List<AuthorisePaymentRequest> valid = withoutErrors(request.items(), errors);
+
+        Iterator<AuthoriseBatchItem> stored = valid.isEmpty()
+                ? List.<AuthoriseBatchItem>of().iterator()
+                : paymentService.authoriseBatch(valid).iterator();
+
+        List<BatchAuthoriseResponse.Item> items = new ArrayList<>(errors.size());
+        int created = 0, failed = 0;
+        for (int i = 0; i < errors.size(); i++) {
+            if (!errors.get(i).isEmpty()) {
+                items.add(new BatchAuthoriseResponse.Item(i, HttpStatus.BAD_REQUEST.value(), null, errors.get(i)));
+                continue;
+            }
+            AuthoriseBatchItem result = stored.next();
+            if (result.isStored()) {
+                created++;
+                items.add(new BatchAuthoriseResponse.Item(i, HttpStatus.CREATED.value(), PaymentResponse.from(result.payment()), List.of()));
+            } else {
+                failed++;
+                items.add(new BatchAuthoriseResponse.Item(i, HttpStatus.SERVICE_UNAVAILABLE.value(), null, List.of(result.error())));
+            }
+        }
+        return new BatchAuthoriseResponse(created, errors.size() - valid.size(), failed, items);
+    }
+
+    /*
+    Server-sent events for one payment, instead of polling GET /payments/{id}: its current state first,
+    then each change committed on this instance, until it is refunded or voided.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable UUID id) {
+        // subscribed before the read, so a change committed in between is still sent
+        PaymentEventBus.Subscription subscription = eventBus.subscribeToPayment(id);
+        try {
+            return eventStreamer.stream(subscription, paymentService.getById(id));
+        } catch (RuntimeException e) {
+            subscription.close();
+            throw e;
+        }
+    }
+
+    // server-sent events for every payment changed by this client's captures and refunds, single or bulk
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter clientEvents(@RequestHeader("X-Client-Id") String clientId) {
+        return eventStreamer.stream(eventBus.subscribeToClient(clientId), null);
     }
 
     @PostMapping("/{id}/capture")
@@ -51,18 +144,7 @@ public class PaymentController {
             @Valid @RequestBody CapturePaymentRequest request
     ) {
         CaptureResult result = paymentService.capture(id, clientId, idempotencyKey, request.amount());
-
-        Payment payment = paymentService.getById(result.paymentId());
-        return new PaymentResponse(
-                payment.getId(),
-                payment.getAmount(),
-                payment.getCurrency(),
-                payment.getState(),
-                payment.getCapturedAmount(),
-                payment.getRefundedAmount(),
-                payment.getCreatedAt(),
-                payment.getUpdatedAt()
-        );
+        return result.payment();
     }
 
     @PostMapping("/{id}/refund")
@@ -73,32 +155,196 @@ public class PaymentController {
             @Valid @RequestBody RefundPaymentRequest request
     ) {
         RefundResult result = paymentService.refund(id, clientId, idempotencyKey, request.amount());
+        return result.payment();
+    }
 
-        Payment payment = paymentService.getById(result.paymentId());
-        return new PaymentResponse(
-                payment.getId(),
-                payment.getAmount(),
-                payment.getCurrency(),
-                payment.getState(),
-                payment.getCapturedAmount(),
-                payment.getRefundedAmount(),
-                payment.getCreatedAt(),
-                payment.getUpdatedAt()
-        );
+    @PostMapping("/capture:bulk")
+    public BulkMutationResponse captureBulk(
+            @RequestHeader("X-Client-Id") String clientId,
+            @Valid @RequestBody BulkMutationRequest request
+    ) {
+        return bulk(clientId, request, bulkPaymentService::capture);
     }
 
+    @PostMapping("/refund:bulk")
+    public BulkMutationResponse refundBulk(
+            @RequestHeader("X-Client-Id") String clientId,
+            @Valid @RequestBody BulkMutationRequest request
+    ) {
+        return bulk(clientId, request, bulkPaymentService::refund);
+    }
+
+    @GetMapping
+    public PaymentPage list(
+            @RequestParam(required = false) PaymentState state,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return paymentService.list(new PaymentListing.Filter(state, currency, from, to), cursor, limit);
+    }
+
+    /*
+    NDJSON, one PaymentResponse per line, written while the rows are read and flushed once per fetch;
+    gzip-compressed when the client accepts it. The filter is checked before the response starts, so a
+    bad one still gets a problem response.
+     */
+    @GetMapping(value = "/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(required = false) PaymentState state,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) Instant from,
+            @RequestParam(required = false) Instant to,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        var filter = new PaymentListing.Filter(state, currency, from, to);
+        paymentService.checkFilter(filter);
+        boolean gzip = acceptsGzip(acceptEncoding);
+
+        StreamingResponseBody body = out -> {
+            // syncFlush so each flush pushes the compressed rows so far to the client
+            try (OutputStream target = gzip ? new GZIPOutputStream(out, 64 * 1024, true) : out) {
+                long[] written = {0};
+                paymentService.export(filter, payment -> {
+                    try {
+                        target.write(exportWriter.writeValueAsBytes(payment));
+                        target.write('\n');
+                        if (++written[0] % exportFlushEvery == 0) {
+                            target.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+
+        var response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
+    // captures, refunds and voids from the ledger, oldest first, with the balances after each
+    @GetMapping("/{id}/history")
+    public PaymentHistory history(
+            @PathVariable UUID id,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit
+    ) {
+        return paymentService.history(id, after, limit);
+    }
+
+    /*
+    Strong ETag from id and version. A poll with If-None-Match only needs the version, so an unchanged
+    payment is answered with 304 without loading or serialising it.
+     */
     @GetMapping("/{id}")
-    public PaymentResponse get(@PathVariable UUID id) {
-        Payment payment = paymentService.getById(id);
-        return new PaymentResponse(
-                payment.getId(),
-                payment.getAmount(),
-                payment.getCurrency(),
-                payment.getState(),
-                payment.getCapturedAmount(),
-                payment.getRefundedAmount(),
-                payment.getCreatedAt(),
-                payment.getUpdatedAt()
-        );
+    public ResponseEntity<PaymentResponse> get(@PathVariable UUID id, WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                && request.checkNotModified(etag(id, paymentService.versionOf(id)))) {
+            return null;
+        }
+        PaymentResponse payment = paymentService.getById(id);
+        return ResponseEntity.ok().eTag(etag(id, payment.version())).body(payment);
+    }
+
+    // gzip if the header lists it, or `*`, with a non-zero q-value; an explicit gzip entry wins over `*`
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null, any = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim();
+                if (param.regionMatches(true, 0, "q=", 0, 2)) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        Double q = gzip != null ? gzip : any;
+        return q != null && q > 0;
+    }
+
+    private static String etag(UUID id, int version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    private BulkMutationResponse bulk(
+            String clientId,
+            BulkMutationRequest request,
+            BiFunction<String, List<BulkItem>, List<BulkItemResult>> operation
+    ) {
+        // the whole request counts towards the cap, invalid items included
+        bulkPaymentService.checkSize(request.items().size());
+        List<List<String>> errors = validateEach(request.items());
+        List<BulkItem> valid = withoutErrors(request.items(), errors).stream()
+                .map(item -> new BulkItem(item.paymentId(), item.idempotencyKey(), item.amount()))
+                .toList();
+
+        Iterator<BulkItemResult> results = valid.isEmpty()
+                ? List.<BulkItemResult>of().iterator()
+                : operation.apply(clientId, valid).iterator();
+
+        List<BulkMutationResponse.Item> items = new ArrayList<>(errors.size());
+        int fresh = 0, replayed = 0;
+        for (int i = 0; i < errors.size(); i++) {
+            if (!errors.get(i).isEmpty()) {
+                items.add(new BulkMutationResponse.Item(i, BulkItemResult.Outcome.REJECTED, HttpStatus.BAD_REQUEST.value(),
+                        null, "VALIDATION_ERROR", errors.get(i)));
+                continue;
+            }
+            BulkItemResult result = results.next();
+            switch (result.outcome()) {
+                case FRESH -> fresh++;
+                case REPLAY -> replayed++;
+                case REJECTED -> { }
+            }
+            items.add(new BulkMutationResponse.Item(i, result.outcome(), result.status(), result.payment(), result.code(),
+                    result.error() == null ? List.of() : List.of(result.error())));
+        }
+        return new BulkMutationResponse(fresh, replayed, errors.size() - fresh - replayed, items);
+    }
+
+    // bean validation per item, so one bad item doesn't fail the whole request
+    private List<List<String>> validateEach(List<?> items) {
+        List<List<String>> errors = new ArrayList<>(items.size());
+        for (Object item : items) {
+            errors.add(item == null ? List.of("item: must not be null") : validator.validate(item).stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .toList());
+        }
+        return errors;
+    }
+
+    private static <T> List<T> withoutErrors(List<T> items, List<List<String>> errors) {
+        List<T> valid = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (errors.get(i).isEmpty()) {
+                valid.add(items.get(i));
+            }
+        }
+        return valid;
     }
 }
@@ -0,0 +1,25 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.entity.PaymentState;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/*
+A change to a payment as published from the outbox: what happened, by how much, and the balances right
+after it. Events can arrive more than once and, across relays, out of order; version increases with
+every change to one payment, so consumers keep the highest version they have seen.
+ */
+public record PaymentEvent(
+        long sequence,
+        UUID paymentId,
+        Type type,
+        long amount,
+        PaymentState state,
+        long capturedAmount,
+        long refundedAmount,
+        int version,
+        Instant occurredAt
+) {
+    public enum Type { CAPTURE, REFUND, VOID }
+}
@@ -0,0 +1,107 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.config.PaymentEventStreamProperties;
+import com.jackforbes.paymentscore.entity.PaymentState;
+import com.jackforbes.paymentscore.service.PaymentEventBus;
+import jakarta.annotation.PreDestroy;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Writes a bus subscription to an SSE response from its own virtual thread, so a slow client only ever
+holds up itself. Each change is a `payment` event carrying the PaymentResponse; after `heartbeat`
+without one a comment line is sent, which keeps proxies from closing the idle connection and lets a
+vanished client be noticed. A subscriber evicted for falling behind gets an `evicted` event and the
+stream is closed; it should reconnect.
+ */
+@Component
+public class PaymentEventStreamer {
+
+    private final PaymentEventStreamProperties properties;
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    public PaymentEventStreamer(PaymentEventStreamProperties properties) {
+        this.properties = properties;
+    }
+
+    // current, when given, is sent first and changes it already includes are skipped
+    public SseEmitter stream(PaymentEventBus.Subscription subscription, PaymentResponse current) {
+        SseEmitter emitter = new SseEmitter(properties.timeout().toMillis());
+        emitter.onCompletion(subscription::close);
+        emitter.onError(e -> subscription.close());
+        emitter.onTimeout(() -> {
+            subscription.close();
+            emitter.complete();
+        });
+        senders.execute(() -> send(emitter, subscription, current));
+        return emitter;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        senders.shutdownNow();
+    }
+
+    private void send(SseEmitter emitter, PaymentEventBus.Subscription subscription, PaymentResponse current) {
+        try {
+            int sentVersion = -1;
+            if (current != null) {
+                emitter.send(event(current));
+                if (isFinal(current)) {
+                    emitter.complete();
+                    return;
+                }
+                sentVersion = current.version();
+            }
+
+            while (true) {
+                if (subscription.isEvicted()) {
+                    emitter.send(SseEmitter.event().name("evicted").data("too far behind, reconnect to resume"));
+                    emitter.complete();
+                    return;
+                }
+                if (subscription.isClosed()) {
+                    return;
+                }
+                PaymentEventBus.Change change = subscription.poll(properties.heartbeat());
+                if (change == null) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                    continue;
+                }
+                PaymentResponse payment = change.payment();
+                if (current != null && payment.version() <= sentVersion) {
+                    continue;
+                }
+                emitter.send(event(payment));
+                if (current != null) {
+                    sentVersion = payment.version();
+                    if (isFinal(payment)) {
+                        emitter.complete();
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutting down
+            emitter.complete();
+        } catch (IOException | IllegalStateException e) {
+            // the client went away or the emitter already completed
+        } finally {
+            subscription.close();
+        }
+    }
+
+    private static SseEmitter.SseEventBuilder event(PaymentResponse payment) {
+        return SseEmitter.event().name("payment").data(payment, MediaType.APPLICATION_JSON);
+    }
+
+    // no further changes can follow these states
+    private static boolean isFinal(PaymentResponse payment) {
+        return payment.state() == PaymentState.REFUNDED || payment.state() == PaymentState.VOIDED;
+    }
+}
@@ -0,0 +1,26 @@
+package com.jackforbes.paymentscore.api;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/*
+A page of a payment's ledger, oldest entry first. Each entry carries the balances right after it was
+applied. nextAfter is passed back as `after` for the next page and is null on the last one.
+ */
+public record PaymentHistory(
+        UUID paymentId,
+        long amount,
+        String currency,
+        List<Entry> entries,
+        Long nextAfter
+) {
+    public record Entry(
+            long sequence,
+            PaymentEvent.Type type,
+            long amount,
+            long capturedAmount,
+            long refundedAmount,
+            Instant createdAt
+    ) {}
+}
@@ -0,0 +1,9 @@
+package com.jackforbes.paymentscore.api;
+
+import java.util.List;
+
+// nextCursor is null on the last page
+public record PaymentPage(
+        List<PaymentResponse> items,
+        String nextCursor
+) {}
@@ -1,5 +1,7 @@
 package com.jackforbes.paymentscore.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.jackforbes.paymentscore.entity.Payment;
 import com.jackforbes.paymentscore.entity.PaymentState;
 
 import java.time.Instant;
@@ -13,5 +15,21 @@ public record PaymentResponse (
         long capturedAmount,
         long refundedAmount,
         Instant createdAt,
-        Instant updatedAt
-) {}
+        Instant updatedAt,
+        // the row's optimistic lock version, kept out of the body; orders snapshots of the same payment
+        @JsonIgnore int version
+) {
+    public static PaymentResponse from(Payment payment) {
+        return new PaymentResponse(
+                payment.getId(),
+                payment.getAmount(),
+                payment.getCurrency(),
+                payment.getState(),
+                payment.getCapturedAmount(),
+                payment.getRefundedAmount(),
+                payment.getCreatedAt(),
+                payment.getUpdatedAt(),
+                payment.getVersion()
+        );
+    }
+}
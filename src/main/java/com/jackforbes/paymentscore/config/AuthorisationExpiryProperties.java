@@ -0,0 +1,27 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/*
+Voiding of authorisations that were never captured.
+
+ttl:         an AUTHORISED payment older than this is voided
+batchSize:   payments voided per transaction
+workers:     batches run concurrently on this node; they skip each other's rows
+interval:    delay between runs
+maxRunTime:  a run stops after this long even if it hasn't caught up; the next run continues
+lockTimeout: a batch gives up rather than queue behind a table lock
+ */
+@ConfigurationProperties("payments.authorisation.expiry")
+public record AuthorisationExpiryProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("7d") Duration ttl,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("2") int workers,
+        @DefaultValue("1m") Duration interval,
+        @DefaultValue("30s") Duration maxRunTime,
+        @DefaultValue("1s") Duration lockTimeout
+) {}
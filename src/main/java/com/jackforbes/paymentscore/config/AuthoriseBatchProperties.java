@@ -0,0 +1,14 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/*
+maxItems:  largest batch accepted by POST /payments/authorise:batch
+chunkSize: payments inserted and committed per transaction
+ */
+@ConfigurationProperties("payments.authorise.batch")
+public record AuthoriseBatchProperties(
+        @DefaultValue("1000") int maxItems,
+        @DefaultValue("500") int chunkSize
+) {}
@@ -0,0 +1,10 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+// maxItems: largest request accepted by POST /payments/capture:bulk and /payments/refund:bulk
+@ConfigurationProperties("payments.bulk")
+public record BulkMutationProperties(
+        @DefaultValue("1000") int maxItems
+) {}
@@ -0,0 +1,25 @@
+package com.jackforbes.paymentscore.config;
+
+import com.jackforbes.paymentscore.service.PaymentIdGenerator;
+import com.jackforbes.paymentscore.service.RandomPaymentIdGenerator;
+import com.jackforbes.paymentscore.service.UuidV7PaymentIdGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Clock;
+
+/*
+payments.ids.generator picks the id scheme for new payments. Existing ids are never rewritten, and both
+schemes produce ordinary UUIDs, so switching is safe at any time.
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    @Bean
+    public PaymentIdGenerator paymentIdGenerator(PaymentIdProperties properties, Clock clock) {
+        return switch (properties.generator()) {
+            case UUID_V7 -> new UuidV7PaymentIdGenerator(clock);
+            case RANDOM -> new RandomPaymentIdGenerator();
+        };
+    }
+}
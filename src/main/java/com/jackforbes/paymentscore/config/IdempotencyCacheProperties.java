@@ -0,0 +1,14 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties("payments.idempotency.cache")
+public record IdempotencyCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("100000") int maxSize,
+        @DefaultValue("10m") Duration ttl,
+        @DefaultValue("16") int stripes
+) {}
@@ -0,0 +1,23 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/*
+Daily partitions of idempotency_keys.
+
+premakeDays:  partitions kept ready ahead of today
+interval:     how often partitions are created and expired ones dropped
+claimOverlap: for this long after midnight UTC a claim also reserves the key in yesterday's partition, so a
+              duplicate that is still running from before midnight can't go unnoticed
+lockTimeout:  partition DDL gives up rather than queue behind long-running transactions
+ */
+@ConfigurationProperties("payments.idempotency.partitions")
+public record IdempotencyPartitionProperties(
+        @DefaultValue("7") int premakeDays,
+        @DefaultValue("1h") Duration interval,
+        @DefaultValue("5m") Duration claimOverlap,
+        @DefaultValue("5s") Duration lockTimeout
+) {}
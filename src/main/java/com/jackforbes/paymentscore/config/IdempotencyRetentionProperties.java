@@ -0,0 +1,38 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/*
+How long idempotency keys are kept, and how hard the sweeper may work to remove expired ones.
+
+ttl:         retention for clients without an override
+clients:     per-client retention, keyed by X-Client-Id
+batchSize:   keys deleted per transaction
+pause:       sleep between batches, so the sweeper never saturates the database
+maxRunTime:  a run stops after this long even if it hasn't caught up; the next run continues
+lockTimeout: a batch gives up rather than queue behind a table lock
+ */
+@ConfigurationProperties("payments.idempotency.retention")
+public record IdempotencyRetentionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("7d") Duration ttl,
+        @DefaultValue Map<String, Duration> clients,
+        @DefaultValue("1000") int batchSize,
+        @DefaultValue("50ms") Duration pause,
+        @DefaultValue("1m") Duration interval,
+        @DefaultValue("30s") Duration maxRunTime,
+        @DefaultValue("1s") Duration lockTimeout
+) {
+    public Duration ttlFor(String clientId) {
+        return clients.getOrDefault(clientId, ttl);
+    }
+
+    // partitions are dropped once every key in them is past this
+    public Duration longestTtl() {
+        return clients.values().stream().reduce(ttl, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+    }
+}
@@ -0,0 +1,29 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/*
+Relaying of payment events from payment_outbox.
+
+enabled:        whether this node runs a relay; events are written to the outbox either way
+batchSize:      events taken, published and removed per transaction
+interval:       delay between runs, and so roughly the delivery latency when the outbox is idle
+maxRunTime:     a run stops after this long even if it hasn't caught up; the next run continues
+sink:           memory keeps the latest memoryCapacity events in process, file appends NDJSON to file
+ */
+@ConfigurationProperties("payments.outbox")
+public record OutboxProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("200ms") Duration interval,
+        @DefaultValue("10s") Duration maxRunTime,
+        @DefaultValue("memory") Sink sink,
+        @DefaultValue("10000") int memoryCapacity,
+        @DefaultValue("target/outbox/payment-events.ndjson") Path file
+) {
+    public enum Sink { MEMORY, FILE }
+}
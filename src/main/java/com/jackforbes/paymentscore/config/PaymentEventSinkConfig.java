@@ -0,0 +1,24 @@
+package com.jackforbes.paymentscore.config;
+
+import com.jackforbes.paymentscore.service.FilePaymentEventSink;
+import com.jackforbes.paymentscore.service.InMemoryPaymentEventSink;
+import com.jackforbes.paymentscore.service.PaymentEventSink;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import tools.jackson.databind.json.JsonMapper;
+
+/*
+payments.outbox.sink picks where relayed events go. Both built-in sinks are meant for local runs and
+tests; delivering to a broker means adding a PaymentEventSink for it and a case here.
+ */
+@Configuration
+public class PaymentEventSinkConfig {
+
+    @Bean
+    public PaymentEventSink paymentEventSink(OutboxProperties properties, JsonMapper jsonMapper) {
+        return switch (properties.sink()) {
+            case MEMORY -> new InMemoryPaymentEventSink(properties.memoryCapacity());
+            case FILE -> new FilePaymentEventSink(properties.file(), jsonMapper);
+        };
+    }
+}
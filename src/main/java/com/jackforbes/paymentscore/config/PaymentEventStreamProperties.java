@@ -0,0 +1,22 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/*
+Server-sent event streams of payment changes.
+
+bufferSize:     changes queued per subscriber; a subscriber that falls this far behind is disconnected
+heartbeat:      a comment is sent after this long without events, so idle connections stay open
+timeout:        streams are closed after this long and the client reconnects
+maxSubscribers: open streams on this instance; more are refused with 503
+ */
+@ConfigurationProperties("payments.events")
+public record PaymentEventStreamProperties(
+        @DefaultValue("64") int bufferSize,
+        @DefaultValue("15s") Duration heartbeat,
+        @DefaultValue("30m") Duration timeout,
+        @DefaultValue("10000") int maxSubscribers
+) {}
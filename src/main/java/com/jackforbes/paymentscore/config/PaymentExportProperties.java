@@ -0,0 +1,13 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/*
+GET /payments/export: fetchSize rows are pulled from the server-side cursor at a time, and the
+response is flushed after each of them, so memory stays bounded by one fetch whatever the export size.
+ */
+@ConfigurationProperties("payments.export")
+public record PaymentExportProperties(
+        @DefaultValue("1000") int fetchSize
+) {}
@@ -0,0 +1,11 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties("payments.ids")
+public record PaymentIdProperties(
+        @DefaultValue("uuid-v7") Generator generator
+) {
+    public enum Generator { UUID_V7, RANDOM }
+}
@@ -0,0 +1,15 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/*
+compactEvery: pending ledger entries after which a capture or refund also folds them into the payments row
+(a state change always does); historyDefaultLimit / historyMaxLimit: page sizes for GET /payments/{id}/history
+ */
+@ConfigurationProperties("payments.ledger")
+public record PaymentLedgerProperties(
+        @DefaultValue("32") int compactEvery,
+        @DefaultValue("100") int historyDefaultLimit,
+        @DefaultValue("1000") int historyMaxLimit
+) {}
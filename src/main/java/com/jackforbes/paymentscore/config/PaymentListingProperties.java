@@ -0,0 +1,11 @@
+package com.jackforbes.paymentscore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+// page sizes for GET /payments: defaultLimit when none is asked for, maxLimit is the largest accepted
+@ConfigurationProperties("payments.listing")
+public record PaymentListingProperties(
+        @DefaultValue("50") int defaultLimit,
+        @DefaultValue("500") int maxLimit
+) {}
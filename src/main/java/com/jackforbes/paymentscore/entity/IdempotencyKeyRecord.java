@@ -8,6 +8,8 @@ import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.UUID;
 
 @Entity
@@ -18,7 +20,7 @@ public class IdempotencyKeyRecord {
     private IdempotencyKeyId id;
 
     @Column(name = "request_hash", nullable = false)
-    private String requestHash;
+    private byte[] requestHash;
 
     @Column(name = "response_status", nullable = false)
     private int responseStatus;
@@ -29,11 +31,15 @@ public class IdempotencyKeyRecord {
     @Column(name = "created_at", nullable = false)
     private Instant createdAt;
 
+    // partition key: UTC date of createdAt
+    @Column(name = "created_on", nullable = false)
+    private LocalDate createdOn;
+
     protected IdempotencyKeyRecord() {}
 
     public IdempotencyKeyRecord(
             IdempotencyKeyId id,
-            String requestHash,
+            byte[] requestHash,
             int responseStatus,
             Instant createdAt,
             UUID paymentId
@@ -42,12 +48,14 @@ public class IdempotencyKeyRecord {
         this.requestHash = requestHash;
         this.responseStatus = responseStatus;
         this.createdAt = createdAt;
+        this.createdOn = createdAt.atOffset(ZoneOffset.UTC).toLocalDate();
         this.paymentId = paymentId;
     }
 
     public IdempotencyKeyId getId() { return id; }
-    public String getRequestHash() { return requestHash; }
+    public byte[] getRequestHash() { return requestHash; }
     public int getResponseStatus() { return responseStatus; }
     public Instant getCreatedAt() { return createdAt; }
+    public LocalDate getCreatedOn() { return createdOn; }
     public UUID getPaymentId() { return paymentId; }
 }
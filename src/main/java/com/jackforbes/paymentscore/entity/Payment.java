@@ -3,6 +3,7 @@ package com.jackforbes.paymentscore.entity;
 import jakarta.persistence.*;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 import java.time.Instant;
 import java.util.UUID;
@@ -10,7 +11,7 @@ import java.util.UUID;
 
 @Entity
 @Table(name = "payments")
-public class Payment {
+public class Payment implements Persistable<UUID> {
 
     @Id
     @Column(nullable = false)
@@ -27,6 +28,7 @@ public class Payment {
     @JdbcTypeCode(SqlTypes.NAMED_ENUM)
     private PaymentState state;
 
+    // balances and version as of the last ledger fold; the state is always current (see V9__payment_ledger)
     @Column(name = "captured_amount", nullable = false)
     private long capturedAmount;
 
@@ -43,6 +45,11 @@ public class Payment {
     @Column(nullable = false)
     private int version;
 
+    // the id is assigned and version is primitive, so Spring Data can't tell a new payment from a stored
+    // one and save() would merge it (SELECT, then INSERT); new payments say so themselves instead
+    @Transient
+    private boolean newPayment;
+
     protected Payment() {
 
     }
@@ -58,6 +65,13 @@ public class Payment {
     public Instant getUpdatedAt() { return updatedAt; }
     public int getVersion() { return version; }
 
+    @Override
+    public boolean isNew() { return newPayment; }
+
+    @PostPersist
+    @PostLoad
+    void markStored() { this.newPayment = false; }
+
     // creates an authorised payment
     public static Payment authorised(UUID id, long amount, String currency, Instant now) {
         Payment payment = new Payment();
@@ -70,6 +84,7 @@ public class Payment {
         payment.createdAt = now;
         payment.updatedAt = now;
         payment.version = 0;
+        payment.newPayment = true;
         return payment;
     }
 
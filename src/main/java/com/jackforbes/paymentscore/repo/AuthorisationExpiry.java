@@ -0,0 +1,18 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/*
+Voids uncaptured authorisations oldest first along idx_payments_authorised_created_at. Each call is
+meant to be its own short transaction; payments locked by a live capture or another voider are skipped,
+not waited for.
+ */
+public interface AuthorisationExpiry {
+
+    // voids up to limit AUTHORISED payments created before cutoff and returns them as updated
+    List<PaymentResponse> voidExpired(Instant cutoff, int limit, Instant now, Duration lockTimeout);
+}
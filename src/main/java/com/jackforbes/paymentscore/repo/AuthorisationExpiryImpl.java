@@ -0,0 +1,67 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+class AuthorisationExpiryImpl implements AuthorisationExpiry {
+
+    // a capture that wins the row lock moves the payment on first; one that loses re-checks its guard,
+    // sees VOIDED and is rejected like any other illegal transition. An AUTHORISED payment has no
+    // pending ledger entries, so the VOID entry is folded straight away.
+    private static final String VOID_EXPIRED = """
+            WITH expired AS (
+                SELECT id, amount
+                FROM payments
+                WHERE state = 'AUTHORISED' AND created_at < :cutoff
+                ORDER BY created_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            ),
+            entry AS (
+                INSERT INTO payment_entries (payment_id, type, amount, created_at)
+                SELECT id, 'VOID', amount, :now
+                FROM expired
+                RETURNING payment_id, sequence
+            ),
+            voided AS (
+                UPDATE payments p
+                SET state = 'VOIDED',
+                    updated_at = :now,
+                    version = p.version + 1,
+                    ledger_position = entry.sequence
+                FROM entry
+                WHERE p.id = entry.payment_id
+                RETURNING p.*
+            ),
+            event AS (
+                INSERT INTO payment_outbox (payment_id, type, amount, state, captured_amount, refunded_amount, version, occurred_at)
+                SELECT id, 'VOID', amount, state, captured_amount, refunded_amount, version, updated_at
+                FROM voided
+            )
+            SELECT id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version
+            FROM voided
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    AuthorisationExpiryImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<PaymentResponse> voidExpired(Instant cutoff, int limit, Instant now, Duration lockTimeout) {
+        // SET LOCAL only lasts until the caller's transaction ends
+        jdbc.getJdbcTemplate().execute("SET LOCAL lock_timeout = " + lockTimeout.toMillis());
+        var params = new MapSqlParameterSource()
+                .addValue("cutoff", cutoff.atOffset(ZoneOffset.UTC))
+                .addValue("limit", limit)
+                .addValue("now", now.atOffset(ZoneOffset.UTC));
+        return jdbc.query(VOID_EXPIRED, params, (rs, rowNum) -> PaymentRows.payment(rs));
+    }
+}
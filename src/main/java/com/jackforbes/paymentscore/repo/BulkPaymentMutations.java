@@ -0,0 +1,39 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/*
+Set-based statements for bulk capture/refund: each call is one round trip however many items it covers.
+All of them must run in the caller's transaction, in the order declared here, so keys are always
+locked before payments, like the single-item statement does.
+ */
+public interface BulkPaymentMutations {
+
+    record KeyClaim(String idemKey, byte[] requestHash, UUID paymentId) {}
+
+    record StoredKey(byte[] requestHash, int status, UUID paymentId) {}
+
+    // payment: the balances once all of the request's changes to it are applied
+    record BalanceUpdate(PaymentResponse payment) {}
+
+    // inserts the keys that are free and returns them; taken keys are left alone
+    Set<String> claimKeys(String clientId, List<KeyClaim> claims, Instant now);
+
+    Map<String, StoredKey> findKeys(String clientId, Collection<String> idemKeys);
+
+    // locks the payments in id order, so concurrent bulks can't deadlock on each other, then reads their balances
+    Map<UUID, PaymentResponse> lockPayments(Collection<UUID> ids);
+
+    // gives back keys claimed for items that were then rejected
+    void releaseKeys(String clientId, Collection<String> idemKeys);
+
+    // appends a ledger entry and an outbox event per change, folding them into payments as the single-item path does
+    void appendEntries(List<BalanceUpdate> updates, List<PaymentOutbox.Entry> events, Instant now);
+}
@@ -0,0 +1,198 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.IdempotencyPartitionProperties;
+import com.jackforbes.paymentscore.config.PaymentLedgerProperties;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.SqlArrayValue;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+class BulkPaymentMutationsImpl implements BulkPaymentMutations {
+
+    // same rules as the single-item claim (see IdempotentPaymentMutationsImpl and ClaimDay), for many keys;
+    // ordered by key so two bulks claiming overlapping keys wait on each other instead of deadlocking
+    private static final String CLAIM_KEYS = """
+            WITH k AS (
+                SELECT * FROM unnest(:idemKeys, :requestHashes, :paymentIds) AS k(idem_key, request_hash, payment_id)
+            ),
+            reserve AS (
+                INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+                SELECT :clientId, k.idem_key, k.request_hash, 200, k.payment_id, :now, :yesterday
+                FROM k
+                WHERE :reserveYesterday
+                  AND NOT EXISTS (SELECT 1 FROM idempotency_keys i
+                                  WHERE i.client_id = :clientId AND i.idem_key = k.idem_key AND i.created_on < :yesterday)
+                ORDER BY k.idem_key
+                ON CONFLICT DO NOTHING
+                RETURNING idem_key
+            )
+            INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+            SELECT :clientId, k.idem_key, k.request_hash, 200, k.payment_id, :now, :today
+            FROM k
+            WHERE CASE WHEN :reserveYesterday THEN k.idem_key IN (SELECT idem_key FROM reserve)
+                       ELSE NOT EXISTS (SELECT 1 FROM idempotency_keys i
+                                        WHERE i.client_id = :clientId AND i.idem_key = k.idem_key AND i.created_on < :today)
+                  END
+            ORDER BY k.idem_key
+            ON CONFLICT DO NOTHING
+            RETURNING idem_key
+            """;
+
+    private static final String FIND_KEYS = """
+            SELECT idem_key, request_hash, response_status, payment_id
+            FROM idempotency_keys
+            WHERE client_id = :clientId AND idem_key = ANY(:idemKeys)
+            """;
+
+    private static final String LOCK_PAYMENTS = """
+            SELECT id
+            FROM payments
+            WHERE id = ANY(:ids)
+            ORDER BY id
+            FOR NO KEY UPDATE
+            """;
+
+    // read once the locks are held, so entries appended by the previous holder are included
+    private static final String FIND_BALANCES = """
+            SELECT id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version
+            FROM payment_balances
+            WHERE id = ANY(:ids)
+            """;
+
+    private static final String RELEASE_KEYS = """
+            DELETE FROM idempotency_keys
+            WHERE client_id = :clientId AND idem_key = ANY(:idemKeys)
+            """;
+
+    /*
+    entry: the ledger rows, in item order so one payment's entries get increasing sequences
+    event: the outbox rows, in the same order
+    then folds pending entries into the payments whose state changed or that have compactEvery entries
+    pending; u.version is the balance version after the bulk, so u.version - p.version entries are pending
+     */
+    private static final String APPEND_ENTRIES = """
+            WITH entry AS (
+                INSERT INTO payment_entries (payment_id, type, amount, created_at)
+                SELECT e.payment_id, e.type, e.amount, :now
+                FROM unnest(:eventPaymentIds, :eventTypes, :eventAmounts) WITH ORDINALITY AS e(payment_id, type, amount, ord)
+                ORDER BY e.ord
+                RETURNING payment_id, sequence
+            ),
+            event AS (
+                INSERT INTO payment_outbox (payment_id, type, amount, state, captured_amount, refunded_amount, version, occurred_at)
+                SELECT e.payment_id, e.type, e.amount, CAST(e.state AS payment_state), e.captured_amount, e.refunded_amount,
+                       e.version, :now
+                FROM unnest(:eventPaymentIds, :eventTypes, :eventAmounts, :eventStates, :eventCapturedAmounts,
+                            :eventRefundedAmounts, :eventVersions)
+                     WITH ORDINALITY AS e(payment_id, type, amount, state, captured_amount, refunded_amount, version, ord)
+                ORDER BY e.ord
+            )
+            UPDATE payments p
+            SET state = CAST(u.state AS payment_state),
+                captured_amount = u.captured_amount,
+                refunded_amount = u.refunded_amount,
+                updated_at = :now,
+                version = u.version,
+                ledger_position = (SELECT max(sequence) FROM entry WHERE entry.payment_id = p.id)
+            FROM unnest(:ids, :states, :capturedAmounts, :refundedAmounts, :versions)
+                 AS u(id, state, captured_amount, refunded_amount, version)
+            WHERE p.id = u.id
+              AND (p.state <> CAST(u.state AS payment_state) OR u.version - p.version >= :compactEvery)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final IdempotencyPartitionProperties partitions;
+    private final PaymentLedgerProperties ledger;
+
+    BulkPaymentMutationsImpl(NamedParameterJdbcTemplate jdbc, IdempotencyPartitionProperties partitions,
+                             PaymentLedgerProperties ledger) {
+        this.jdbc = jdbc;
+        this.partitions = partitions;
+        this.ledger = ledger;
+    }
+
+    @Override
+    public Set<String> claimKeys(String clientId, List<KeyClaim> claims, Instant now) {
+        ClaimDay day = ClaimDay.of(now, partitions.claimOverlap());
+        var params = new MapSqlParameterSource()
+                .addValue("clientId", clientId)
+                .addValue("today", day.today())
+                .addValue("yesterday", day.yesterday())
+                .addValue("reserveYesterday", day.reserveYesterday())
+                .addValue("idemKeys", array("text", claims.stream().map(KeyClaim::idemKey).toArray(String[]::new)))
+                .addValue("requestHashes", array("bytea", claims.stream().map(KeyClaim::requestHash).toArray(byte[][]::new)))
+                .addValue("paymentIds", array("uuid", claims.stream().map(KeyClaim::paymentId).toArray(UUID[]::new)))
+                .addValue("now", now.atOffset(ZoneOffset.UTC));
+        return new HashSet<>(jdbc.queryForList(CLAIM_KEYS, params, String.class));
+    }
+
+    @Override
+    public Map<String, StoredKey> findKeys(String clientId, Collection<String> idemKeys) {
+        var params = new MapSqlParameterSource()
+                .addValue("clientId", clientId)
+                .addValue("idemKeys", array("text", idemKeys.toArray(String[]::new)));
+        Map<String, StoredKey> found = new HashMap<>();
+        jdbc.query(FIND_KEYS, params, rs -> {
+            found.put(rs.getString("idem_key"), new StoredKey(
+                    rs.getBytes("request_hash"),
+                    rs.getInt("response_status"),
+                    rs.getObject("payment_id", UUID.class)
+            ));
+        });
+        return found;
+    }
+
+    @Override
+    public Map<UUID, PaymentResponse> lockPayments(Collection<UUID> ids) {
+        var params = new MapSqlParameterSource("ids", array("uuid", ids.toArray(UUID[]::new)));
+        // only the locks are wanted from this one
+        jdbc.queryForList(LOCK_PAYMENTS, params, UUID.class);
+        Map<UUID, PaymentResponse> found = new HashMap<>();
+        jdbc.query(FIND_BALANCES, params, rs -> {
+            PaymentResponse payment = PaymentRows.payment(rs);
+            found.put(payment.id(), payment);
+        });
+        return found;
+    }
+
+    @Override
+    public void releaseKeys(String clientId, Collection<String> idemKeys) {
+        jdbc.update(RELEASE_KEYS, new MapSqlParameterSource()
+                .addValue("clientId", clientId)
+                .addValue("idemKeys", array("text", idemKeys.toArray(String[]::new))));
+    }
+
+    @Override
+    public void appendEntries(List<BalanceUpdate> updates, List<PaymentOutbox.Entry> events, Instant now) {
+        jdbc.update(APPEND_ENTRIES, new MapSqlParameterSource()
+                .addValue("ids", array("uuid", updates.stream().map(u -> u.payment().id()).toArray(UUID[]::new)))
+                .addValue("states", array("text", updates.stream().map(u -> u.payment().state().name()).toArray(String[]::new)))
+                .addValue("capturedAmounts", array("int8", updates.stream().map(u -> u.payment().capturedAmount()).toArray(Long[]::new)))
+                .addValue("refundedAmounts", array("int8", updates.stream().map(u -> u.payment().refundedAmount()).toArray(Long[]::new)))
+                .addValue("versions", array("int4", updates.stream().map(u -> u.payment().version()).toArray(Integer[]::new)))
+                .addValue("compactEvery", ledger.compactEvery())
+                .addValue("eventPaymentIds", array("uuid", events.stream().map(e -> e.payment().id()).toArray(UUID[]::new)))
+                .addValue("eventTypes", array("text", events.stream().map(e -> e.type().name()).toArray(String[]::new)))
+                .addValue("eventAmounts", array("int8", events.stream().map(PaymentOutbox.Entry::amount).toArray(Long[]::new)))
+                .addValue("eventStates", array("text", events.stream().map(e -> e.payment().state().name()).toArray(String[]::new)))
+                .addValue("eventCapturedAmounts", array("int8", events.stream().map(e -> e.payment().capturedAmount()).toArray(Long[]::new)))
+                .addValue("eventRefundedAmounts", array("int8", events.stream().map(e -> e.payment().refundedAmount()).toArray(Long[]::new)))
+                .addValue("eventVersions", array("int4", events.stream().map(e -> e.payment().version()).toArray(Integer[]::new)))
+                .addValue("now", now.atOffset(ZoneOffset.UTC)));
+    }
+
+    // Object[] rather than a typed array, so javac passes the elements as SqlArrayValue's varargs without a warning
+    private static SqlArrayValue array(String typeName, Object[] elements) {
+        return new SqlArrayValue(typeName, elements);
+    }
+}
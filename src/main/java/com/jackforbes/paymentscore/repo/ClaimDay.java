@@ -0,0 +1,20 @@
+package com.jackforbes.paymentscore.repo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+/*
+The idempotency_keys partition a claim made at `now` goes to. Within `overlap` after midnight UTC the key is
+also reserved in yesterday's partition: a duplicate claimed just before midnight then collides with it, on the
+primary key, even while that duplicate's transaction is still open.
+ */
+record ClaimDay(LocalDate today, LocalDate yesterday, boolean reserveYesterday) {
+
+    static ClaimDay of(Instant now, Duration overlap) {
+        LocalDate today = now.atOffset(ZoneOffset.UTC).toLocalDate();
+        Instant midnight = today.atStartOfDay(ZoneOffset.UTC).toInstant();
+        return new ClaimDay(today, today.minusDays(1), now.isBefore(midnight.plus(overlap)));
+    }
+}
@@ -0,0 +1,92 @@
+package com.jackforbes.paymentscore.repo;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+DDL for the daily partitions of idempotency_keys, named idempotency_keys_pYYYYMMDD.
+
+New partitions are created standalone and then attached, which only takes SHARE UPDATE EXCLUSIVE on the
+parent, so inserts and lookups keep running. Old ones are detached CONCURRENTLY and dropped; a detach that was
+interrupted is finished on the next call.
+ */
+@Repository
+public class IdempotencyKeyPartitions {
+
+    private static final String PREFIX = "idempotency_keys_p";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String LIST = """
+            SELECT c.relname, i.inhdetachpending
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            WHERE i.inhparent = 'idempotency_keys'::regclass
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+
+    public IdempotencyKeyPartitions(JdbcTemplate jdbc, TransactionTemplate transactionTemplate) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public record Partition(String name, LocalDate day, boolean detachPending) {}
+
+    // attached partitions by day; tables not following the naming scheme are ignored
+    public Map<LocalDate, Partition> list() {
+        Map<LocalDate, Partition> partitions = new TreeMap<>();
+        jdbc.query(LIST, rs -> {
+            String name = rs.getString("relname");
+            if (name.startsWith(PREFIX) && name.length() == PREFIX.length() + 8) {
+                LocalDate day = LocalDate.parse(name.substring(PREFIX.length()), SUFFIX);
+                partitions.put(day, new Partition(name, day, rs.getBoolean("inhdetachpending")));
+            }
+        });
+        return partitions;
+    }
+
+    public void create(LocalDate day, Duration lockTimeout) {
+        String name = nameOf(day);
+        transactionTemplate.executeWithoutResult(tx -> {
+            setLockTimeout(lockTimeout);
+            jdbc.execute("CREATE TABLE IF NOT EXISTS " + name + " (LIKE idempotency_keys INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            jdbc.execute("ALTER TABLE idempotency_keys ATTACH PARTITION " + name
+                    + " FOR VALUES FROM ('" + day + "') TO ('" + day.plusDays(1) + "')");
+        });
+    }
+
+    // on one autocommit connection: DETACH CONCURRENTLY can't run inside a transaction
+    public void drop(Partition partition, Duration lockTimeout) {
+        jdbc.execute((ConnectionCallback<Void>) connection -> {
+            try (Statement st = connection.createStatement()) {
+                st.execute("SET lock_timeout = " + lockTimeout.toMillis());
+                try {
+                    st.execute("ALTER TABLE idempotency_keys DETACH PARTITION " + partition.name()
+                            + (partition.detachPending() ? " FINALIZE" : " CONCURRENTLY"));
+                    st.execute("DROP TABLE " + partition.name());
+                } finally {
+                    st.execute("RESET lock_timeout");
+                }
+            }
+            return null;
+        });
+    }
+
+    public static String nameOf(LocalDate day) {
+        return PREFIX + day.format(SUFFIX);
+    }
+
+    private void setLockTimeout(Duration lockTimeout) {
+        jdbc.execute("SET LOCAL lock_timeout = " + lockTimeout.toMillis());
+    }
+}
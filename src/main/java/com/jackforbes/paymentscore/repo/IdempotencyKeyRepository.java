@@ -4,5 +4,13 @@ import com.jackforbes.paymentscore.entity.IdempotencyKeyId;
 import com.jackforbes.paymentscore.entity.IdempotencyKeyRecord;
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyRecord, IdempotencyKeyId> {
+import java.util.Optional;
+
+/*
+The table's primary key also contains the partition day, and just after midnight a key can sit in two
+partitions with the same content (see ClaimDay), so look keys up with findFirstById rather than findById.
+ */
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyRecord, IdempotencyKeyId>, IdempotencyKeyRetention {
+
+    Optional<IdempotencyKeyRecord> findFirstByIdOrderByCreatedAtAsc(IdempotencyKeyId id);
 }
@@ -0,0 +1,23 @@
+package com.jackforbes.paymentscore.repo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+
+/*
+Bounded deletes of expired idempotency keys, walking idx_idempotency_created_at from the oldest end.
+Each call is meant to be its own short transaction; rows locked by in-flight requests are skipped,
+not waited for.
+ */
+public interface IdempotencyKeyRetention {
+
+    // keys of every client except `excludedClients` created before `cutoff`
+    int deleteExpired(Instant cutoff, Collection<String> excludedClients, int limit, Duration lockTimeout);
+
+    int deleteExpiredForClient(String clientId, Instant cutoff, int limit, Duration lockTimeout);
+
+    Optional<Instant> oldestCreatedAt(Collection<String> excludedClients);
+
+    Optional<Instant> oldestCreatedAtForClient(String clientId);
+}
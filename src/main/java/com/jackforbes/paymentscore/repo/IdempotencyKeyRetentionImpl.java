@@ -0,0 +1,79 @@
+package com.jackforbes.paymentscore.repo;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.SqlArrayValue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Optional;
+
+class IdempotencyKeyRetentionImpl implements IdempotencyKeyRetention {
+
+    private static final String DELETE_EXPIRED = """
+            DELETE FROM idempotency_keys k
+            USING (
+                SELECT tableoid, ctid
+                FROM idempotency_keys
+                WHERE created_at < :cutoff
+                  AND %s
+                ORDER BY created_at
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            ) expired
+            WHERE k.tableoid = expired.tableoid AND k.ctid = expired.ctid
+            """;
+
+    private static final String OLDEST = """
+            SELECT min(created_at) FROM idempotency_keys WHERE %s
+            """;
+
+    private static final String ALL_BUT_EXCLUDED = "NOT (client_id = ANY(:excluded))";
+    private static final String ONE_CLIENT = "client_id = :clientId";
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    IdempotencyKeyRetentionImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public int deleteExpired(Instant cutoff, Collection<String> excludedClients, int limit, Duration lockTimeout) {
+        return delete(DELETE_EXPIRED.formatted(ALL_BUT_EXCLUDED), excluded(excludedClients), cutoff, limit, lockTimeout);
+    }
+
+    @Override
+    public int deleteExpiredForClient(String clientId, Instant cutoff, int limit, Duration lockTimeout) {
+        return delete(DELETE_EXPIRED.formatted(ONE_CLIENT), new MapSqlParameterSource("clientId", clientId), cutoff, limit, lockTimeout);
+    }
+
+    @Override
+    public Optional<Instant> oldestCreatedAt(Collection<String> excludedClients) {
+        return oldest(OLDEST.formatted(ALL_BUT_EXCLUDED), excluded(excludedClients));
+    }
+
+    @Override
+    public Optional<Instant> oldestCreatedAtForClient(String clientId) {
+        return oldest(OLDEST.formatted(ONE_CLIENT), new MapSqlParameterSource("clientId", clientId));
+    }
+
+    private int delete(String sql, MapSqlParameterSource params, Instant cutoff, int limit, Duration lockTimeout) {
+        // SET LOCAL only lasts until the caller's transaction ends
+        jdbc.getJdbcTemplate().execute("SET LOCAL lock_timeout = " + lockTimeout.toMillis());
+        return jdbc.update(sql, params
+                .addValue("cutoff", cutoff.atOffset(ZoneOffset.UTC))
+                .addValue("limit", limit));
+    }
+
+    private Optional<Instant> oldest(String sql, MapSqlParameterSource params) {
+        OffsetDateTime oldest = jdbc.queryForObject(sql, params, OffsetDateTime.class);
+        return Optional.ofNullable(oldest).map(OffsetDateTime::toInstant);
+    }
+
+    private static MapSqlParameterSource excluded(Collection<String> excludedClients) {
+        return new MapSqlParameterSource("excluded", new SqlArrayValue("text", (Object[]) excludedClients.toArray(String[]::new)));
+    }
+}
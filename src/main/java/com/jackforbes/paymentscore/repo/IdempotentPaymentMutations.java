@@ -0,0 +1,16 @@
+package com.jackforbes.paymentscore.repo;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/*
+Capture/refund in at most two statements: one claims the idempotency key and locks the payment, the
+other checks the guard against the ledger balances and appends the entry. Must run inside the caller's
+transaction, which is expected to roll back when a claimed mutation is rejected so the key is released again.
+ */
+public interface IdempotentPaymentMutations {
+
+    MutationOutcome captureIdempotently(UUID id, long amount, String clientId, String idemKey, byte[] requestHash, Instant now);
+
+    MutationOutcome refundIdempotently(UUID id, long amount, String clientId, String idemKey, byte[] requestHash, Instant now);
+}
@@ -0,0 +1,199 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.IdempotencyPartitionProperties;
+import com.jackforbes.paymentscore.config.PaymentLedgerProperties;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+class IdempotentPaymentMutationsImpl implements IdempotentPaymentMutations {
+
+    /*
+    reserve:  just after midnight, takes the key in yesterday's partition first (see ClaimDay)
+    claim:    takes the key in today's partition, or yields nothing if another request already holds it,
+              today through the primary key or on an earlier day through the NOT EXISTS / reserve
+    existing: the key as it was when the statement started (sibling CTEs can't see claim's insert)
+    locked:   only for a claimed key, the payment row lock that serializes appends to its ledger
+    the final row always exists and carries, for a key that was already taken, the payment it points at
+     */
+    private static final String CLAIM = """
+            WITH reserve AS (
+                INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+                SELECT :clientId, :idemKey, :requestHash, 200, :id, :now, :yesterday
+                WHERE :reserveYesterday
+                  AND NOT EXISTS (SELECT 1 FROM idempotency_keys
+                                  WHERE client_id = :clientId AND idem_key = :idemKey AND created_on < :yesterday)
+                ON CONFLICT DO NOTHING
+                RETURNING 1
+            ),
+            claim AS (
+                INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+                SELECT :clientId, :idemKey, :requestHash, 200, :id, :now, :today
+                WHERE CASE WHEN :reserveYesterday THEN EXISTS (SELECT 1 FROM reserve)
+                           ELSE NOT EXISTS (SELECT 1 FROM idempotency_keys
+                                            WHERE client_id = :clientId AND idem_key = :idemKey AND created_on < :today)
+                      END
+                ON CONFLICT DO NOTHING
+                RETURNING payment_id
+            ),
+            existing AS (
+                SELECT request_hash, response_status, payment_id
+                FROM idempotency_keys
+                WHERE client_id = :clientId AND idem_key = :idemKey
+                ORDER BY created_on
+                LIMIT 1
+            ),
+            locked AS (
+                SELECT id
+                FROM payments
+                WHERE id = (SELECT payment_id FROM claim)
+                FOR NO KEY UPDATE
+            )
+            SELECT EXISTS (SELECT 1 FROM claim) AS claimed,
+                   EXISTS (SELECT 1 FROM locked) AS found,
+                   e.request_hash AS existing_hash,
+                   e.response_status AS existing_status,
+                   p.id, p.amount, p.currency, p.state, p.captured_amount, p.refunded_amount, p.created_at, p.updated_at, p.version
+            FROM (SELECT 1) AS one
+            LEFT JOIN existing e ON true
+            LEFT JOIN payment_balances p ON p.id = e.payment_id
+            """;
+
+    /*
+    A separate statement because it must see entries committed by whoever held the lock before us, and
+    a statement keeps the snapshot it started with.
+    current: the balances with pending entries applied
+    after:   the payment once this change is applied, only if the guard holds
+    entry:   the ledger row; payments itself is only written by fold
+    fold:    when the state changes or compactEvery entries are pending, moves them into the payments row
+    event:   the outbox row for the change, so it commits or rolls back with it
+     */
+    private static final String APPLY_TEMPLATE = """
+            WITH current AS (
+                SELECT * FROM payment_balances WHERE id = :id
+            ),
+            after AS (
+                SELECT id, amount, currency,
+                       %s,
+                       created_at,
+                       CAST(:now AS TIMESTAMPTZ) AS updated_at,
+                       version + 1 AS version,
+                       state AS previous_state,
+                       pending_entries + 1 AS pending_entries
+                FROM current
+                WHERE %s
+            ),
+            entry AS (
+                INSERT INTO payment_entries (payment_id, type, amount, created_at)
+                SELECT id, :eventType, :amount, updated_at
+                FROM after
+                RETURNING sequence
+            ),
+            fold AS (
+                UPDATE payments p
+                SET state = a.state,
+                    captured_amount = a.captured_amount,
+                    refunded_amount = a.refunded_amount,
+                    updated_at = a.updated_at,
+                    version = a.version,
+                    ledger_position = (SELECT sequence FROM entry)
+                FROM after a
+                WHERE p.id = a.id
+                  AND (a.state <> a.previous_state OR a.pending_entries >= :compactEvery)
+            ),
+            event AS (
+                INSERT INTO payment_outbox (payment_id, type, amount, state, captured_amount, refunded_amount, version, occurred_at)
+                SELECT id, :eventType, :amount, state, captured_amount, refunded_amount, version, updated_at
+                FROM after
+            )
+            SELECT id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version
+            FROM after
+            """;
+
+    private static final String CAPTURE = APPLY_TEMPLATE.formatted(
+            """
+            CAST(CASE WHEN captured_amount + :amount = amount
+                                 THEN 'CAPTURED' ELSE 'PARTIALLY_CAPTURED' END AS payment_state) AS state,
+                           captured_amount + :amount AS captured_amount,
+                           refunded_amount""",
+            """
+            state IN ('AUTHORISED', 'PARTIALLY_CAPTURED')
+                  AND captured_amount + :amount <= amount""");
+
+    private static final String REFUND = APPLY_TEMPLATE.formatted(
+            """
+            CAST(CASE WHEN refunded_amount + :amount = captured_amount
+                                 THEN 'REFUNDED' ELSE 'PARTIALLY_REFUNDED' END AS payment_state) AS state,
+                           captured_amount,
+                           refunded_amount + :amount AS refunded_amount""",
+            """
+            state IN ('CAPTURED', 'PARTIALLY_CAPTURED', 'PARTIALLY_REFUNDED')
+                  AND refunded_amount + :amount <= captured_amount""");
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final IdempotencyPartitionProperties partitions;
+    private final PaymentLedgerProperties ledger;
+
+    IdempotentPaymentMutationsImpl(NamedParameterJdbcTemplate jdbc, IdempotencyPartitionProperties partitions,
+                                   PaymentLedgerProperties ledger) {
+        this.jdbc = jdbc;
+        this.partitions = partitions;
+        this.ledger = ledger;
+    }
+
+    @Override
+    public MutationOutcome captureIdempotently(UUID id, long amount, String clientId, String idemKey, byte[] requestHash, Instant now) {
+        return mutate(CAPTURE, PaymentEvent.Type.CAPTURE, params(id, amount, clientId, idemKey, requestHash, now, partitions.claimOverlap()));
+    }
+
+    @Override
+    public MutationOutcome refundIdempotently(UUID id, long amount, String clientId, String idemKey, byte[] requestHash, Instant now) {
+        return mutate(REFUND, PaymentEvent.Type.REFUND, params(id, amount, clientId, idemKey, requestHash, now, partitions.claimOverlap()));
+    }
+
+    // a replay or an unknown payment is answered by the claim statement alone
+    private MutationOutcome mutate(String apply, PaymentEvent.Type type, MapSqlParameterSource params) {
+        Claim claim = jdbc.queryForObject(CLAIM, params, IdempotentPaymentMutationsImpl::mapClaim);
+        if (!claim.found()) {
+            return claim.outcome();
+        }
+        params.addValue("eventType", type.name()).addValue("compactEvery", ledger.compactEvery());
+        PaymentResponse payment = jdbc.query(apply, params, (rs, rowNum) -> PaymentRows.payment(rs)).stream().findFirst().orElse(null);
+        return new MutationOutcome(true, null, null, payment);
+    }
+
+    private static MapSqlParameterSource params(UUID id, long amount, String clientId, String idemKey, byte[] requestHash,
+                                                Instant now, Duration claimOverlap) {
+        ClaimDay day = ClaimDay.of(now, claimOverlap);
+        return new MapSqlParameterSource()
+                .addValue("today", day.today())
+                .addValue("yesterday", day.yesterday())
+                .addValue("reserveYesterday", day.reserveYesterday())
+                .addValue("id", id)
+                .addValue("amount", amount)
+                .addValue("clientId", clientId)
+                .addValue("idemKey", idemKey)
+                .addValue("requestHash", requestHash)
+                .addValue("now", now.atOffset(ZoneOffset.UTC));
+    }
+
+    private record Claim(boolean found, MutationOutcome outcome) {}
+
+    private static Claim mapClaim(ResultSet rs, int rowNum) throws SQLException {
+        PaymentResponse payment = rs.getObject("id") == null ? null : PaymentRows.payment(rs);
+        return new Claim(rs.getBoolean("found"), new MutationOutcome(
+                rs.getBoolean("claimed"),
+                rs.getBytes("existing_hash"),
+                rs.getObject("existing_status", Integer.class),
+                payment
+        ));
+    }
+}
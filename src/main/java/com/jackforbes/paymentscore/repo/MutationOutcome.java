@@ -0,0 +1,17 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+/*
+Result of an idempotent capture/refund statement.
+
+claimed: this request inserted the idempotency key, payment is the updated row (null if the guard rejected it)
+not claimed: the key already existed; existingRequestHash/existingStatus describe it when it was visible to the
+statement, and payment is the row it points at
+ */
+public record MutationOutcome(
+        boolean claimed,
+        byte[] existingRequestHash,
+        Integer existingStatus,
+        PaymentResponse payment
+) {}
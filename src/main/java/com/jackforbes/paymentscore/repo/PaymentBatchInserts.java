@@ -0,0 +1,14 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.entity.Payment;
+
+import java.util.List;
+
+/*
+Inserts new payments as one JDBC batch, skipping the per-entity merge/flush work of save().
+The driver is configured with reWriteBatchedInserts, so a batch goes out as multi-row INSERTs.
+ */
+public interface PaymentBatchInserts {
+
+    void insertAll(List<Payment> payments);
+}
@@ -0,0 +1,40 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.entity.Payment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.ZoneOffset;
+import java.util.List;
+
+class PaymentBatchInsertsImpl implements PaymentBatchInserts {
+
+    private static final String INSERT = """
+            INSERT INTO payments (id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version)
+            VALUES (?, ?, ?, CAST(? AS payment_state), ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    PaymentBatchInsertsImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public void insertAll(List<Payment> payments) {
+        jdbc.batchUpdate(INSERT, payments, payments.size(), PaymentBatchInsertsImpl::bind);
+    }
+
+    private static void bind(PreparedStatement ps, Payment payment) throws SQLException {
+        ps.setObject(1, payment.getId());
+        ps.setLong(2, payment.getAmount());
+        ps.setString(3, payment.getCurrency());
+        ps.setString(4, payment.getState().name());
+        ps.setLong(5, payment.getCapturedAmount());
+        ps.setLong(6, payment.getRefundedAmount());
+        ps.setObject(7, payment.getCreatedAt().atOffset(ZoneOffset.UTC));
+        ps.setObject(8, payment.getUpdatedAt().atOffset(ZoneOffset.UTC));
+        ps.setInt(9, payment.getVersion());
+    }
+}
@@ -0,0 +1,16 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+import java.util.function.Consumer;
+
+/*
+Streams every payment matching the filter in (created_at, id) order through a server-side cursor.
+Must run inside a transaction: PostgreSQL only honours the fetch size with autocommit off, otherwise
+the driver reads the whole result into memory first.
+ */
+public interface PaymentExport {
+
+    // returns the number of payments passed to sink
+    long export(PaymentListing.Filter filter, Consumer<PaymentResponse> sink);
+}
@@ -0,0 +1,41 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.PaymentExportProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+class PaymentExportImpl implements PaymentExport {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    // a template of its own so the fetch size applies to exports only
+    PaymentExportImpl(DataSource dataSource, PaymentExportProperties properties) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(properties.fetchSize());
+        this.jdbc = new NamedParameterJdbcTemplate(template);
+    }
+
+    @Override
+    public long export(PaymentListing.Filter filter, Consumer<PaymentResponse> sink) {
+        var params = new MapSqlParameterSource();
+        String sql = """
+                SELECT id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version
+                FROM payment_balances
+                %s
+                ORDER BY created_at, id
+                """.formatted(PaymentListingImpl.whereClause(PaymentListingImpl.conditions(filter, params)));
+
+        AtomicLong count = new AtomicLong();
+        jdbc.query(sql, params, rs -> {
+            sink.accept(PaymentRows.payment(rs));
+            count.incrementAndGet();
+        });
+        return count.get();
+    }
+}
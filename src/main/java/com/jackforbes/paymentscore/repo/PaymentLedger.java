@@ -0,0 +1,16 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentHistory;
+
+import java.util.List;
+import java.util.UUID;
+
+/*
+Reads payment_entries, the insert-only ledger the capture, refund and void statements append to
+(IdempotentPaymentMutationsImpl, BulkPaymentMutationsImpl, AuthorisationExpiryImpl).
+ */
+public interface PaymentLedger {
+
+    // up to limit entries with a sequence above after, in sequence order, with running balances
+    List<PaymentHistory.Entry> history(UUID paymentId, long after, int limit);
+}
@@ -0,0 +1,51 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import com.jackforbes.paymentscore.api.PaymentHistory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+class PaymentLedgerImpl implements PaymentLedger {
+
+    // the running sums need every earlier entry, so the page is cut after the window is computed
+    private static final String HISTORY = """
+            SELECT sequence, type, amount, created_at, captured_amount, refunded_amount
+            FROM (
+                SELECT sequence, type, amount, created_at,
+                       coalesce(sum(amount) FILTER (WHERE type = 'CAPTURE') OVER running, 0) AS captured_amount,
+                       coalesce(sum(amount) FILTER (WHERE type = 'REFUND') OVER running, 0) AS refunded_amount
+                FROM payment_entries
+                WHERE payment_id = :paymentId
+                WINDOW running AS (ORDER BY sequence)
+            ) h
+            WHERE sequence > :after
+            ORDER BY sequence
+            LIMIT :limit
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    PaymentLedgerImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<PaymentHistory.Entry> history(UUID paymentId, long after, int limit) {
+        var params = new MapSqlParameterSource()
+                .addValue("paymentId", paymentId)
+                .addValue("after", after)
+                .addValue("limit", limit);
+        return jdbc.query(HISTORY, params, (rs, rowNum) -> new PaymentHistory.Entry(
+                rs.getLong("sequence"),
+                PaymentEvent.Type.valueOf(rs.getString("type")),
+                rs.getLong("amount"),
+                rs.getLong("captured_amount"),
+                rs.getLong("refunded_amount"),
+                rs.getObject("created_at", OffsetDateTime.class).toInstant()
+        ));
+    }
+}
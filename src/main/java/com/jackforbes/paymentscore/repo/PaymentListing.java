@@ -0,0 +1,23 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.entity.PaymentState;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/*
+Keyset pagination over payments in (created_at, id) order, read straight into responses without
+hydrating entities. Every filter is optional; from is inclusive, to exclusive.
+ */
+public interface PaymentListing {
+
+    record Filter(PaymentState state, String currency, Instant from, Instant to) {}
+
+    // the position of the last row of the previous page
+    record Position(Instant createdAt, UUID id) {}
+
+    // up to limit payments after position (or from the start when it is null)
+    List<PaymentResponse> list(Filter filter, Position after, int limit);
+}
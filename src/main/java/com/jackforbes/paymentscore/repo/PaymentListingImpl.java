@@ -0,0 +1,69 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+class PaymentListingImpl implements PaymentListing {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    PaymentListingImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /*
+    Only the filters that are set go into the WHERE clause, so the planner sees plain range conditions
+    it can match to idx_payments_created_at_id or idx_payments_currency_created_at_id; the row
+    comparison on (created_at, id) continues the scan right after the previous page.
+     */
+    @Override
+    public List<PaymentResponse> list(Filter filter, Position after, int limit) {
+        var params = new MapSqlParameterSource("limit", limit);
+        List<String> where = conditions(filter, params);
+        if (after != null) {
+            where.add("(created_at, id) > (:afterCreatedAt, :afterId)");
+            params.addValue("afterCreatedAt", after.createdAt().atOffset(ZoneOffset.UTC));
+            params.addValue("afterId", after.id());
+        }
+
+        String sql = """
+                SELECT id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version
+                FROM payment_balances
+                %s
+                ORDER BY created_at, id
+                LIMIT :limit
+                """.formatted(whereClause(where));
+        return jdbc.query(sql, params, (rs, rowNum) -> PaymentRows.payment(rs));
+    }
+
+    // the set filters as SQL conditions, with their values added to params
+    static List<String> conditions(Filter filter, MapSqlParameterSource params) {
+        List<String> where = new ArrayList<>();
+        if (filter.state() != null) {
+            where.add("state = CAST(:state AS payment_state)");
+            params.addValue("state", filter.state().name());
+        }
+        if (filter.currency() != null) {
+            where.add("currency = :currency");
+            params.addValue("currency", filter.currency());
+        }
+        if (filter.from() != null) {
+            where.add("created_at >= :from");
+            params.addValue("from", filter.from().atOffset(ZoneOffset.UTC));
+        }
+        if (filter.to() != null) {
+            where.add("created_at < :to");
+            params.addValue("to", filter.to().atOffset(ZoneOffset.UTC));
+        }
+        return where;
+    }
+
+    static String whereClause(List<String> conditions) {
+        return conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions);
+    }
+}
@@ -0,0 +1,23 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+import java.util.List;
+
+/*
+Events are written to payment_outbox by the statements that change payments, inside the same
+transaction (IdempotentPaymentMutationsImpl, BulkPaymentMutationsImpl, AuthorisationExpiryImpl).
+This fragment drains them.
+ */
+public interface PaymentOutbox {
+
+    // an event for a change worked out in memory; the payment is as it is right after the change
+    record Entry(PaymentEvent.Type type, long amount, PaymentResponse payment) {}
+
+    /*
+    Removes up to limit of the oldest events no other relay holds and returns them in sequence order.
+    They are back in the outbox if the caller's transaction rolls back.
+     */
+    List<PaymentEvent> takeBatch(int limit);
+}
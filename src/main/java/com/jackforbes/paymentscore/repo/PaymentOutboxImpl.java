@@ -0,0 +1,58 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import com.jackforbes.paymentscore.entity.PaymentState;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+class PaymentOutboxImpl implements PaymentOutbox {
+
+    // SKIP LOCKED lets several relays take disjoint batches; RETURNING has no order, so it's sorted here
+    private static final String TAKE_BATCH = """
+            DELETE FROM payment_outbox
+            WHERE sequence IN (
+                SELECT sequence
+                FROM payment_outbox
+                ORDER BY sequence
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING sequence, payment_id, type, amount, state, captured_amount, refunded_amount, version, occurred_at
+            """;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    PaymentOutboxImpl(NamedParameterJdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<PaymentEvent> takeBatch(int limit) {
+        List<PaymentEvent> events = new ArrayList<>(jdbc.query(TAKE_BATCH, new MapSqlParameterSource("limit", limit),
+                PaymentOutboxImpl::event));
+        events.sort(Comparator.comparingLong(PaymentEvent::sequence));
+        return events;
+    }
+
+    private static PaymentEvent event(ResultSet rs, int rowNum) throws SQLException {
+        return new PaymentEvent(
+                rs.getLong("sequence"),
+                rs.getObject("payment_id", UUID.class),
+                PaymentEvent.Type.valueOf(rs.getString("type")),
+                rs.getLong("amount"),
+                PaymentState.valueOf(rs.getString("state")),
+                rs.getLong("captured_amount"),
+                rs.getLong("refunded_amount"),
+                rs.getInt("version"),
+                rs.getObject("occurred_at", OffsetDateTime.class).toInstant()
+        );
+    }
+}
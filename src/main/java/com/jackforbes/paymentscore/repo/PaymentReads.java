@@ -0,0 +1,18 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+Single-payment reads mapped straight from the row, without a managed entity, persistence context or
+dirty-checking snapshot. Each is one statement, so callers don't need a transaction around them.
+ */
+public interface PaymentReads {
+
+    Optional<PaymentResponse> findResponseById(UUID id);
+
+    // enough to answer a conditional GET
+    Optional<Integer> findVersionById(UUID id);
+}
@@ -0,0 +1,34 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Optional;
+import java.util.UUID;
+
+class PaymentReadsImpl implements PaymentReads {
+
+    private static final String FIND_RESPONSE = """
+            SELECT id, amount, currency, state, captured_amount, refunded_amount, created_at, updated_at, version
+            FROM payment_balances
+            WHERE id = ?
+            """;
+
+    private static final String FIND_VERSION = "SELECT version FROM payment_balances WHERE id = ?";
+
+    private final JdbcTemplate jdbc;
+
+    PaymentReadsImpl(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public Optional<PaymentResponse> findResponseById(UUID id) {
+        return jdbc.query(FIND_RESPONSE, (rs, rowNum) -> PaymentRows.payment(rs), id).stream().findFirst();
+    }
+
+    @Override
+    public Optional<Integer> findVersionById(UUID id) {
+        return jdbc.queryForList(FIND_VERSION, Integer.class, id).stream().findFirst();
+    }
+}
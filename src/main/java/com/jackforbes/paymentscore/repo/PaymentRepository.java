@@ -5,5 +5,6 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.UUID;
 
-public interface PaymentRepository extends JpaRepository<Payment, UUID> {
+public interface PaymentRepository extends JpaRepository<Payment, UUID>, IdempotentPaymentMutations, PaymentBatchInserts, BulkPaymentMutations,
+        PaymentListing, PaymentExport, PaymentReads, AuthorisationExpiry, PaymentOutbox, PaymentLedger {
 }
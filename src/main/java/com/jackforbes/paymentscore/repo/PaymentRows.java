@@ -0,0 +1,30 @@
+package com.jackforbes.paymentscore.repo;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.entity.PaymentState;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+// maps the payment columns of a plain JDBC row
+final class PaymentRows {
+
+    private PaymentRows() {
+    }
+
+    static PaymentResponse payment(ResultSet rs) throws SQLException {
+        return new PaymentResponse(
+                rs.getObject("id", UUID.class),
+                rs.getLong("amount"),
+                rs.getString("currency"),
+                PaymentState.valueOf(rs.getString("state")),
+                rs.getLong("captured_amount"),
+                rs.getLong("refunded_amount"),
+                rs.getObject("created_at", OffsetDateTime.class).toInstant(),
+                rs.getObject("updated_at", OffsetDateTime.class).toInstant(),
+                rs.getInt("version")
+        );
+    }
+}
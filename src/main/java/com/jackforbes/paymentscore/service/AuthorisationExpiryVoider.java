@@ -0,0 +1,134 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.AuthorisationExpiryProperties;
+import com.jackforbes.paymentscore.repo.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+Voids AUTHORISED payments older than the authorisation ttl. A run starts `workers` loops that each void
+one batch per short transaction until they run out of expired payments or time. Batches claim rows with
+SKIP LOCKED, so workers, other nodes and live captures never wait on each other.
+
+  payments.authorisation.voided  payments voided
+  payments.authorisation.batch   duration of one batch transaction
+  payments.authorisation.run     duration of a run
+ */
+@Component
+public class AuthorisationExpiryVoider {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorisationExpiryVoider.class);
+
+    private final PaymentRepository repo;
+    private final AuthorisationExpiryProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentCache paymentCache;
+    private final PaymentEventBus eventBus;
+    private final Clock clock;
+    private final Counter voided;
+    private final Timer batches;
+    private final Timer runs;
+
+    public AuthorisationExpiryVoider(
+            PaymentRepository repo,
+            AuthorisationExpiryProperties properties,
+            TransactionTemplate transactionTemplate,
+            PaymentCache paymentCache,
+            PaymentEventBus eventBus,
+            Clock clock,
+            MeterRegistry registry
+    ) {
+        this.repo = repo;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentCache = paymentCache;
+        this.eventBus = eventBus;
+        this.clock = clock;
+        this.voided = Counter.builder("payments.authorisation.voided").register(registry);
+        this.batches = Timer.builder("payments.authorisation.batch").register(registry);
+        this.runs = Timer.builder("payments.authorisation.run").register(registry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${payments.authorisation.expiry.interval:1m}",
+            fixedDelayString = "${payments.authorisation.expiry.interval:1m}"
+    )
+    public void scheduledVoid() {
+        if (properties.enabled()) {
+            voidExpired();
+        }
+    }
+
+    // returns the number of payments voided
+    public int voidExpired() {
+        return runs.record(() -> {
+            long deadline = System.nanoTime() + properties.maxRunTime().toNanos();
+            Instant cutoff = clock.instant().minus(properties.ttl());
+
+            List<Future<Integer>> workers = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < Math.max(1, properties.workers()); i++) {
+                    workers.add(executor.submit(() -> drain(cutoff, deadline)));
+                }
+            }
+
+            int total = 0;
+            for (Future<Integer> worker : workers) {
+                try {
+                    total += worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    log.error("authorisation voider worker failed", e.getCause());
+                }
+            }
+            return total;
+        });
+    }
+
+    private int drain(Instant cutoff, long deadline) {
+        int total = 0;
+        while (true) {
+            int batch;
+            try {
+                batch = batches.record(() -> transactionTemplate.execute(tx -> {
+                    Instant now = Instant.now(clock).truncatedTo(ChronoUnit.MICROS);
+                    List<PaymentResponse> payments = repo.voidExpired(cutoff, properties.batchSize(), now, properties.lockTimeout());
+                    for (PaymentResponse payment : payments) {
+                        paymentCache.putAfterCommit(payment);
+                        eventBus.publishAfterCommit(null, payment);
+                    }
+                    return payments.size();
+                }));
+            } catch (DataAccessException e) {
+                // usually lock_timeout; leave the rest for the next run rather than wait
+                log.warn("authorisation voider stopped: {}", e.getMostSpecificCause().getMessage());
+                return total;
+            }
+            total += batch;
+            voided.increment(batch);
+
+            if (batch < properties.batchSize() || System.nanoTime() >= deadline) {
+                return total;
+            }
+        }
+    }
+}
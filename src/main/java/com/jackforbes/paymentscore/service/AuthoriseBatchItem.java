@@ -0,0 +1,18 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.entity.Payment;
+
+/*
+One entry of a batch authorisation: the stored payment, or why its chunk wasn't stored
+ */
+public record AuthoriseBatchItem(Payment payment, String error) {
+    public static AuthoriseBatchItem stored(Payment payment) {
+        return new AuthoriseBatchItem(payment, null);
+    }
+    public static AuthoriseBatchItem failed(String error) {
+        return new AuthoriseBatchItem(null, error);
+    }
+    public boolean isStored() {
+        return payment != null;
+    }
+}
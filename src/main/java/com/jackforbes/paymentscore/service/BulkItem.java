@@ -0,0 +1,8 @@
+package com.jackforbes.paymentscore.service;
+
+import java.util.UUID;
+
+/*
+One capture or refund of a bulk request, with its own idempotency key
+ */
+public record BulkItem(UUID paymentId, String idempotencyKey, long amount) {}
@@ -0,0 +1,23 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
+/*
+Outcome of one bulk item. status and code match what the single-item endpoint would have answered.
+ */
+public record BulkItemResult(Outcome outcome, int status, PaymentResponse payment, String code, String error) {
+
+    public enum Outcome { FRESH, REPLAY, REJECTED }
+
+    public static BulkItemResult fresh(PaymentResponse payment) {
+        return new BulkItemResult(Outcome.FRESH, 200, payment, null, null);
+    }
+
+    public static BulkItemResult replay(int status, PaymentResponse payment) {
+        return new BulkItemResult(Outcome.REPLAY, status, payment, null, null);
+    }
+
+    public static BulkItemResult rejected(int status, String code, String error) {
+        return new BulkItemResult(Outcome.REJECTED, status, null, code, error);
+    }
+}
@@ -0,0 +1,267 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.BulkMutationProperties;
+import com.jackforbes.paymentscore.entity.PaymentState;
+import com.jackforbes.paymentscore.repo.BulkPaymentMutations.BalanceUpdate;
+import com.jackforbes.paymentscore.repo.BulkPaymentMutations.KeyClaim;
+import com.jackforbes.paymentscore.repo.BulkPaymentMutations.StoredKey;
+import com.jackforbes.paymentscore.repo.PaymentOutbox;
+import com.jackforbes.paymentscore.repo.PaymentRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/*
+Bulk capture/refund with the same per-item idempotency and state rules as PaymentService, but
+set-based: one transaction and a handful of statements however many items there are.
+
+  1. claim every free key in one INSERT .. ON CONFLICT DO NOTHING
+  2. read the keys that were already taken, which become replays or mismatches
+  3. lock all target payments in one SELECT .. FOR NO KEY UPDATE, then read their ledger balances
+  4. apply the items in request order in memory
+  5. release the keys of rejected items and append ledger entries and outbox events for the applied ones
+
+Keys are hashed exactly like the single-item endpoints, so a bulk item and a single request with the
+same key and body replay each other.
+ */
+@Service
+public class BulkPaymentService {
+
+    private final PaymentRepository paymentRepository;
+    private final Clock clock;
+    private final IdempotencyService idempotencyService;
+    private final RequestHasher requestHasher;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentMetrics metrics;
+    private final BulkMutationProperties properties;
+    private final PaymentCache paymentCache;
+    private final PaymentEventBus eventBus;
+
+    public BulkPaymentService(
+            PaymentRepository paymentRepository,
+            Clock clock,
+            IdempotencyService idempotencyService,
+            RequestHasher requestHasher,
+            TransactionTemplate transactionTemplate,
+            PaymentMetrics metrics,
+            BulkMutationProperties properties,
+            PaymentCache paymentCache,
+            PaymentEventBus eventBus
+    ) {
+        this.paymentRepository = paymentRepository;
+        this.clock = clock;
+        this.idempotencyService = idempotencyService;
+        this.requestHasher = requestHasher;
+        this.transactionTemplate = transactionTemplate;
+        this.metrics = metrics;
+        this.properties = properties;
+        this.paymentCache = paymentCache;
+        this.eventBus = eventBus;
+    }
+
+    public List<BulkItemResult> capture(String clientId, List<BulkItem> items) {
+        return apply(RequestHasher.Operation.CAPTURE, clientId, items);
+    }
+
+    public List<BulkItemResult> refund(String clientId, List<BulkItem> items) {
+        return apply(RequestHasher.Operation.REFUND, clientId, items);
+    }
+
+    // exposed so the controller can reject an oversized request before validating its items one by one
+    public void checkSize(int items) {
+        if (items < 1 || items > properties.maxItems()) {
+            throw new InvalidInputException("bulk request must contain between 1 and " + properties.maxItems() + " items");
+        }
+    }
+
+    private List<BulkItemResult> apply(RequestHasher.Operation operation, String clientId, List<BulkItem> items) {
+        checkSize(items.size());
+        for (BulkItem item : items) {
+            if (item.amount() <= 0) {
+                throw new InvalidInputException("amount must be > 0");
+            }
+        }
+
+        String name = operation.name().toLowerCase() + "_bulk";
+        return metrics.operation(name,
+                results -> results.stream().anyMatch(r -> r.outcome() == BulkItemResult.Outcome.REJECTED) ? "partial" : "fresh",
+                () -> metrics.database(name, () -> transactionTemplate.execute(tx -> applyOnce(operation, clientId, items, now()))));
+    }
+
+    private List<BulkItemResult> applyOnce(RequestHasher.Operation operation, String clientId, List<BulkItem> items, Instant now) {
+        byte[][] hashes = new byte[items.size()][];
+        Map<String, Integer> firstByKey = new LinkedHashMap<>();
+        List<KeyClaim> claims = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            BulkItem item = items.get(i);
+            hashes[i] = requestHasher.hash(operation, item.paymentId(), item.amount());
+            if (firstByKey.putIfAbsent(item.idempotencyKey(), i) == null) {
+                claims.add(new KeyClaim(item.idempotencyKey(), hashes[i], item.paymentId()));
+            }
+        }
+
+        Set<String> claimed = paymentRepository.claimKeys(clientId, claims, now);
+        Set<String> taken = new HashSet<>(firstByKey.keySet());
+        taken.removeAll(claimed);
+        Map<String, StoredKey> stored = taken.isEmpty() ? Map.of() : paymentRepository.findKeys(clientId, taken);
+
+        Set<UUID> ids = new HashSet<>();
+        for (BulkItem item : items) {
+            if (claimed.contains(item.idempotencyKey())) {
+                ids.add(item.paymentId());
+            }
+        }
+        stored.values().forEach(key -> ids.add(key.paymentId()));
+        Map<UUID, PaymentResponse> payments = new HashMap<>(paymentRepository.lockPayments(ids));
+
+        BulkItemResult[] results = new BulkItemResult[items.size()];
+        Set<UUID> changed = new LinkedHashSet<>();
+        List<PaymentOutbox.Entry> events = new ArrayList<>();
+        List<String> rejectedKeys = new ArrayList<>();
+        // replays are answered with the payment as it is once the whole bulk has been applied
+        List<Integer> replays = new ArrayList<>();
+        Map<Integer, UUID> replayPayments = new HashMap<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            BulkItem item = items.get(i);
+            String key = item.idempotencyKey();
+            int first = firstByKey.get(key);
+
+            if (first != i) {
+                // the same key twice in one request: behaves like a retry of the first occurrence
+                if (!Arrays.equals(hashes[first], hashes[i])) {
+                    results[i] = mismatch(clientId);
+                } else if (results[first].outcome() == BulkItemResult.Outcome.REJECTED) {
+                    results[i] = results[first];
+                } else {
+                    replays.add(i);
+                    replayPayments.put(i, results[first].outcome() == BulkItemResult.Outcome.FRESH
+                            ? item.paymentId() : replayPayments.get(first));
+                    results[i] = BulkItemResult.replay(results[first].status(), null);
+                }
+                continue;
+            }
+
+            if (!claimed.contains(key)) {
+                StoredKey existing = stored.get(key);
+                if (existing == null) {
+                    // the key holder was removed between our claim and read; a retry will claim it
+                    results[i] = BulkItemResult.rejected(409, "CONCURRENT_MODIFICATION", "idempotency key changed concurrently, please retry");
+                } else if (!MessageDigest.isEqual(existing.requestHash(), hashes[i])) {
+                    results[i] = mismatch(clientId);
+                } else {
+                    replays.add(i);
+                    replayPayments.put(i, existing.paymentId());
+                    results[i] = BulkItemResult.replay(existing.status(), null);
+                }
+                continue;
+            }
+
+            PaymentResponse payment = payments.get(item.paymentId());
+            String rejection = payment == null ? null : operation == RequestHasher.Operation.CAPTURE
+                    ? captureRejection(payment, item.amount())
+                    : refundRejection(payment, item.amount());
+            if (payment == null) {
+                results[i] = BulkItemResult.rejected(404, "NOT_FOUND", new PaymentNotFoundException(item.paymentId()).getMessage());
+                rejectedKeys.add(key);
+            } else if (rejection != null) {
+                results[i] = BulkItemResult.rejected(409, "INVALID_TRANSITION", rejection);
+                rejectedKeys.add(key);
+            } else {
+                PaymentResponse updated = operation == RequestHasher.Operation.CAPTURE
+                        ? captured(payment, item.amount(), now)
+                        : refunded(payment, item.amount(), now);
+                payments.put(updated.id(), updated);
+                changed.add(updated.id());
+                events.add(new PaymentOutbox.Entry(operation == RequestHasher.Operation.CAPTURE
+                        ? PaymentEvent.Type.CAPTURE : PaymentEvent.Type.REFUND, item.amount(), updated));
+                results[i] = BulkItemResult.fresh(updated);
+                idempotencyService.rememberAfterCommit(clientId, key, hashes[i], 200, updated.id());
+            }
+        }
+
+        if (!rejectedKeys.isEmpty()) {
+            paymentRepository.releaseKeys(clientId, rejectedKeys);
+        }
+        if (!changed.isEmpty()) {
+            List<BalanceUpdate> updates = new ArrayList<>(changed.size());
+            changed.forEach(id -> updates.add(new BalanceUpdate(payments.get(id))));
+            paymentRepository.appendEntries(updates, events, now);
+            for (BalanceUpdate update : updates) {
+                paymentCache.putAfterCommit(update.payment());
+                eventBus.publishAfterCommit(clientId, update.payment());
+            }
+        }
+        for (int i : replays) {
+            PaymentResponse payment = payments.get(replayPayments.get(i));
+            if (payment == null) {
+                // a stored key whose payment we didn't lock can only point at a deleted payment
+                throw new PaymentNotFoundException(replayPayments.get(i));
+            }
+            results[i] = BulkItemResult.replay(results[i].status(), payment);
+        }
+        return Arrays.asList(results);
+    }
+
+    private static BulkItemResult mismatch(String clientId) {
+        return BulkItemResult.rejected(409, "IDEMPOTENCY_KEY_REUSED",
+                "clientId=" + clientId + " reused Idempotency-Key with different request");
+    }
+
+    // same rules and messages as the guarded UPDATE and PaymentService.captureRejected
+    private static String captureRejection(PaymentResponse payment, long amount) {
+        if (payment.state() != PaymentState.AUTHORISED && payment.state() != PaymentState.PARTIALLY_CAPTURED) {
+            return "Illegal capture in state " + payment.state();
+        }
+        if (payment.capturedAmount() + amount > payment.amount()) {
+            return "Capture would exceed authorised amount";
+        }
+        return null;
+    }
+
+    private static String refundRejection(PaymentResponse payment, long amount) {
+        if (payment.state() != PaymentState.CAPTURED &&
+                payment.state() != PaymentState.PARTIALLY_CAPTURED &&
+                payment.state() != PaymentState.PARTIALLY_REFUNDED) {
+            return "Illegal refund in state " + payment.state();
+        }
+        if (payment.refundedAmount() + amount > payment.capturedAmount()) {
+            return "Refund would exceed captured amount";
+        }
+        return null;
+    }
+
+    private static PaymentResponse captured(PaymentResponse p, long amount, Instant now) {
+        long capturedAmount = p.capturedAmount() + amount;
+        PaymentState state = capturedAmount == p.amount() ? PaymentState.CAPTURED : PaymentState.PARTIALLY_CAPTURED;
+        return new PaymentResponse(p.id(), p.amount(), p.currency(), state, capturedAmount, p.refundedAmount(), p.createdAt(), now,
+                p.version() + 1);
+    }
+
+    private static PaymentResponse refunded(PaymentResponse p, long amount, Instant now) {
+        long refundedAmount = p.refundedAmount() + amount;
+        PaymentState state = refundedAmount == p.capturedAmount() ? PaymentState.REFUNDED : PaymentState.PARTIALLY_REFUNDED;
+        return new PaymentResponse(p.id(), p.amount(), p.currency(), state, p.capturedAmount(), refundedAmount, p.createdAt(), now,
+                p.version() + 1);
+    }
+
+    private Instant now() {
+        return Instant.now(clock).truncatedTo(ChronoUnit.MICROS);
+    }
+}
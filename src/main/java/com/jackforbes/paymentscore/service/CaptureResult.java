@@ -1,13 +1,21 @@
 package com.jackforbes.paymentscore.service;
 
 
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
 import java.util.UUID;
 
-public record CaptureResult(int status, UUID paymentId, boolean replayed) {
-    public static CaptureResult fresh(int status, UUID paymentId) {
-        return new CaptureResult(status, paymentId, false);
+/*
+Outcome of a capture, carrying the payment snapshot so callers don't need to read it back
+ */
+public record CaptureResult(int status, PaymentResponse payment, boolean replayed) {
+    public static CaptureResult fresh(int status, PaymentResponse payment) {
+        return new CaptureResult(status, payment, false);
+    }
+    public static CaptureResult replay(int status, PaymentResponse payment) {
+        return new CaptureResult(status, payment, true);
     }
-    public static CaptureResult replay(int status, UUID paymentId) {
-        return new CaptureResult(status, paymentId, true);
+    public UUID paymentId() {
+        return payment.id();
     }
 }
@@ -0,0 +1,57 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import tools.jackson.databind.ObjectWriter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+Appends each event to a file as one JSON line. A batch is synced to disk before publish returns, so
+events the relay removed from the outbox are never only in the page cache.
+ */
+public class FilePaymentEventSink implements PaymentEventSink {
+
+    private final Path file;
+    private final ObjectWriter writer;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public FilePaymentEventSink(Path file, JsonMapper jsonMapper) {
+        this.file = file;
+        this.writer = jsonMapper.writerFor(PaymentEvent.class);
+    }
+
+    @Override
+    public void publish(List<PaymentEvent> events) {
+        lock.lock();
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                for (PaymentEvent event : events) {
+                    out.write(writer.writeValueAsBytes(event));
+                    out.write('\n');
+                }
+                out.flush();
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not append payment events to " + file, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.config.IdempotencyCacheProperties;
+import com.jackforbes.paymentscore.entity.IdempotencyKeyId;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+Bounded in-memory copy of recently seen idempotency keys so client retry storms are answered without
+touching idempotency_keys.
+
+Only committed keys may be put here: a cached entry is treated as proof the key is taken.
+ */
+@Component
+public class IdempotencyCache {
+
+    public record Entry(byte[] requestHash, int status, UUID paymentId) {}
+
+    private final boolean enabled;
+    private final StripedLruCache<IdempotencyKeyId, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public IdempotencyCache(IdempotencyCacheProperties properties, MeterRegistry registry) {
+        this.enabled = properties.enabled();
+
+        Counter evictions = Counter.builder("payments.idempotency.cache.evictions").register(registry);
+        this.entries = new StripedLruCache<>(properties.maxSize(), properties.stripes(), properties.ttl(), evictions::increment);
+
+        this.hits = Counter.builder("payments.idempotency.cache").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("payments.idempotency.cache").tag("result", "miss").register(registry);
+        Gauge.builder("payments.idempotency.cache.size", entries, StripedLruCache::size).register(registry);
+    }
+
+    public Optional<Entry> get(IdempotencyKeyId id) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry);
+    }
+
+    public void put(IdempotencyKeyId id, Entry entry) {
+        if (!enabled) {
+            return;
+        }
+        entries.put(id, entry);
+    }
+
+    public long size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,157 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.config.IdempotencyRetentionProperties;
+import com.jackforbes.paymentscore.repo.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+/*
+Removes idempotency keys older than their client's retention, in small batches of one short transaction
+each with a pause in between. Several nodes can sweep at once: batches skip rows another sweeper or a
+live request has locked.
+
+Policies with the longest retention are left to IdempotencyPartitionMaintainer, which drops whole days;
+their keys may outlive the retention by up to a day.
+
+  payments.idempotency.retention.deleted{policy}  keys removed (policy is "default" or the client id)
+  payments.idempotency.retention.lag{policy}      how far the oldest remaining key is past its cutoff
+  payments.idempotency.retention.run              duration of a sweep
+ */
+@Component
+public class IdempotencyKeySweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyKeySweeper.class);
+    private static final String DEFAULT_POLICY = "default";
+
+    private final IdempotencyKeyRepository repo;
+    private final IdempotencyRetentionProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final Clock clock;
+    private final MeterRegistry registry;
+    private final Timer runs;
+    private final Map<String, AtomicLong> lagMillis = new ConcurrentHashMap<>();
+
+    public IdempotencyKeySweeper(
+            IdempotencyKeyRepository repo,
+            IdempotencyRetentionProperties properties,
+            TransactionTemplate transactionTemplate,
+            Clock clock,
+            MeterRegistry registry
+    ) {
+        this.repo = repo;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.clock = clock;
+        this.registry = registry;
+        this.runs = Timer.builder("payments.idempotency.retention.run").register(registry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${payments.idempotency.retention.interval:1m}",
+            fixedDelayString = "${payments.idempotency.retention.interval:1m}"
+    )
+    public void scheduledSweep() {
+        if (properties.enabled()) {
+            sweep();
+        }
+    }
+
+    // returns the number of keys removed
+    public int sweep() {
+        return runs.record(() -> {
+            long deadline = System.nanoTime() + properties.maxRunTime().toNanos();
+            Instant now = clock.instant();
+            var overridden = properties.clients().keySet();
+            Duration dropped = properties.longestTtl();
+
+            int removed = 0;
+            if (properties.ttl().compareTo(dropped) < 0) {
+                Instant cutoff = now.minus(properties.ttl());
+                removed += drain(DEFAULT_POLICY, deadline,
+                        limit -> repo.deleteExpired(cutoff, overridden, limit, properties.lockTimeout()));
+                recordLag(DEFAULT_POLICY, cutoff, () -> repo.oldestCreatedAt(overridden));
+            }
+
+            for (var client : properties.clients().entrySet()) {
+                if (client.getValue().compareTo(dropped) >= 0) {
+                    continue;
+                }
+                Instant clientCutoff = now.minus(client.getValue());
+                removed += drain(client.getKey(), deadline,
+                        limit -> repo.deleteExpiredForClient(client.getKey(), clientCutoff, limit, properties.lockTimeout()));
+                recordLag(client.getKey(), clientCutoff, () -> repo.oldestCreatedAtForClient(client.getKey()));
+            }
+            return removed;
+        });
+    }
+
+    private int drain(String policy, long deadline, IntUnaryOperator deleteBatch) {
+        Counter deleted = registry.counter("payments.idempotency.retention.deleted", "policy", policy);
+        int removed = 0;
+        while (true) {
+            int batch;
+            try {
+                batch = transactionTemplate.execute(tx -> deleteBatch.applyAsInt(properties.batchSize()));
+            } catch (DataAccessException e) {
+                // usually lock_timeout; leave the rest for the next run rather than wait
+                log.warn("idempotency key sweep for policy {} stopped: {}", policy, e.getMostSpecificCause().getMessage());
+                return removed;
+            }
+            removed += batch;
+            deleted.increment(batch);
+
+            if (batch < properties.batchSize() || System.nanoTime() >= deadline) {
+                return removed;
+            }
+            if (!pause()) {
+                return removed;
+            }
+        }
+    }
+
+    private void recordLag(String policy, Instant cutoff, Supplier<Optional<Instant>> oldest) {
+        AtomicLong lag = lagMillis.computeIfAbsent(policy, p -> {
+            AtomicLong value = new AtomicLong();
+            TimeGauge.builder("payments.idempotency.retention.lag", value, TimeUnit.MILLISECONDS, AtomicLong::get)
+                    .tag("policy", p)
+                    .register(registry);
+            return value;
+        });
+        try {
+            lag.set(oldest.get()
+                    .map(createdAt -> Math.max(0, Duration.between(createdAt, cutoff).toMillis()))
+                    .orElse(0L));
+        } catch (DataAccessException e) {
+            log.warn("could not read idempotency key lag for policy {}: {}", policy, e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private boolean pause() {
+        try {
+            Thread.sleep(properties.pause());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.config.IdempotencyPartitionProperties;
+import com.jackforbes.paymentscore.config.IdempotencyRetentionProperties;
+import com.jackforbes.paymentscore.repo.IdempotencyKeyPartitions;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+/*
+Keeps a daily partition of idempotency_keys ready for every day from the oldest retained key to
+premakeDays ahead, and drops a partition once all of its day is past the longest retention. Dropping
+is what expires keys for every policy using that longest retention; shorter per-client policies are
+still swept row by row by IdempotencyKeySweeper.
+
+Runs at startup and then every `interval`; safe on several nodes at once, since creating an existing
+partition or dropping a missing one is skipped.
+
+  payments.idempotency.partitions.changes{action=created|dropped|failed}
+ */
+@Component
+public class IdempotencyPartitionMaintainer {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyPartitionMaintainer.class);
+
+    private final IdempotencyKeyPartitions partitions;
+    private final IdempotencyPartitionProperties properties;
+    private final IdempotencyRetentionProperties retention;
+    private final Clock clock;
+    private final MeterRegistry registry;
+
+    public IdempotencyPartitionMaintainer(
+            IdempotencyKeyPartitions partitions,
+            IdempotencyPartitionProperties properties,
+            IdempotencyRetentionProperties retention,
+            Clock clock,
+            MeterRegistry registry
+    ) {
+        this.partitions = partitions;
+        this.properties = properties;
+        this.retention = retention;
+        this.clock = clock;
+        this.registry = registry;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${payments.idempotency.partitions.interval:1h}")
+    public void maintain() {
+        Instant now = clock.instant();
+        LocalDate today = now.atOffset(ZoneOffset.UTC).toLocalDate();
+        // the first day that can still hold a key within the longest retention
+        LocalDate firstKept = now.minus(retention.longestTtl()).atOffset(ZoneOffset.UTC).toLocalDate();
+
+        Map<LocalDate, IdempotencyKeyPartitions.Partition> existing = partitions.list();
+
+        for (LocalDate day = firstKept; !day.isAfter(today.plusDays(properties.premakeDays())); day = day.plusDays(1)) {
+            if (!existing.containsKey(day)) {
+                LocalDate missing = day;
+                apply("created", missing, () -> partitions.create(missing, properties.lockTimeout()));
+            }
+        }
+        for (var partition : existing.values()) {
+            if (partition.day().isBefore(firstKept)) {
+                apply("dropped", partition.day(), () -> partitions.drop(partition, properties.lockTimeout()));
+            }
+        }
+    }
+
+    private void apply(String action, LocalDate day, Runnable change) {
+        try {
+            change.run();
+            registry.counter("payments.idempotency.partitions.changes", "action", action).increment();
+        } catch (DataAccessException e) {
+            // another node got there first, or lock_timeout; the next run retries
+            registry.counter("payments.idempotency.partitions.changes", "action", "failed").increment();
+            log.warn("idempotency_keys partition for {} not {}: {}", day, action, e.getMostSpecificCause().getMessage());
+        }
+    }
+}
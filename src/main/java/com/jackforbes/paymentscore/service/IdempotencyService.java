@@ -1,15 +1,14 @@
 package com.jackforbes.paymentscore.service;
 
 import com.jackforbes.paymentscore.entity.IdempotencyKeyId;
-import com.jackforbes.paymentscore.entity.IdempotencyKeyRecord;
 import com.jackforbes.paymentscore.repo.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.time.Instant;
-import java.util.HexFormat;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -20,55 +19,73 @@ public class IdempotencyService {
     public record Replay(int status, UUID paymentId) {}
 
     private final IdempotencyKeyRepository repo;
+    private final IdempotencyCache cache;
+    private final MeterRegistry registry;
 
-    public IdempotencyService(IdempotencyKeyRepository repo) {
+    public IdempotencyService(IdempotencyKeyRepository repo, IdempotencyCache cache, MeterRegistry registry) {
         this.repo = repo;
+        this.cache = cache;
+        this.registry = registry;
     }
 
-    public String hash(String canonicalRequest) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(canonicalRequest.getBytes(StandardCharsets.UTF_8));
-            return HexFormat.of().formatHex(hash);
-        } catch (Exception e) {
-            throw new IllegalStateException("Could not hash request", e);
-        }
+    // answers from memory only; empty means "ask the database", not "key is free"
+    public Optional<Replay> cachedReplayOrThrow(String clientId, String idemKey, byte[] requestHash) {
+        return cache.get(new IdempotencyKeyId(clientId, idemKey)).map(cached -> verify(
+                "cache",
+                clientId,
+                requestHash,
+                cached.requestHash(),
+                cached.status(),
+                cached.paymentId()
+        ));
     }
 
     @Transactional(readOnly = true)
-    public Optional<Replay> checkReplayOrThrow(String clientId, String idemKey, String requestHash) {
+    public Optional<Replay> checkReplayOrThrow(String clientId, String idemKey, byte[] requestHash) {
         var id = new IdempotencyKeyId(clientId, idemKey);
 
-        return repo.findById(id).map(existing -> {
-            if (!existing.getRequestHash().equals(requestHash)) {
-                throw new IdempotencyMismatchException(
-                        "clientId=" + clientId + " reused Idempotency-Key with different request"
-                );
-            }
-            return new Replay(existing.getResponseStatus(), existing.getPaymentId());
-        });
+        return repo.findFirstByIdOrderByCreatedAtAsc(id).map(existing -> replayOrThrow(
+                clientId,
+                idemKey,
+                requestHash,
+                existing.getRequestHash(),
+                existing.getResponseStatus(),
+                existing.getPaymentId()
+        ));
+    }
+
+    // for a committed record read from the database by the caller
+    public Replay replayOrThrow(String clientId, String idemKey, byte[] requestHash, byte[] storedHash, int status, UUID paymentId) {
+        cache.put(new IdempotencyKeyId(clientId, idemKey), new IdempotencyCache.Entry(storedHash, status, paymentId));
+        return verify("database", clientId, requestHash, storedHash, status, paymentId);
     }
 
-    @Transactional
-    public void storeSuccess(
-            String clientId,
-            String idemKey,
-            String requestHash,
-            int responseStatus,
-            UUID paymentId,
-            Instant now
-    ) {
+    // the key was written by the current transaction, so only cache it once that commits
+    public void rememberAfterCommit(String clientId, String idemKey, byte[] requestHash, int status, UUID paymentId) {
         var id = new IdempotencyKeyId(clientId, idemKey);
+        var entry = new IdempotencyCache.Entry(requestHash, status, paymentId);
 
-        var record = new IdempotencyKeyRecord(
-                id,
-                requestHash,
-                responseStatus,
-                now,
-                paymentId
-        );
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.put(id, entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                cache.put(id, entry);
+            }
+        });
+    }
 
-        repo.save(record);
+    private Replay verify(String source, String clientId, byte[] requestHash, byte[] storedHash, int status, UUID paymentId) {
+        if (!MessageDigest.isEqual(storedHash, requestHash)) {
+            registry.counter("payments.idempotency.lookups", "source", source, "result", "mismatch").increment();
+            throw new IdempotencyMismatchException(
+                    "clientId=" + clientId + " reused Idempotency-Key with different request"
+            );
+        }
+        registry.counter("payments.idempotency.lookups", "source", source, "result", "replay").increment();
+        return new Replay(status, paymentId);
     }
 
-}
\ No newline at end of file
+}
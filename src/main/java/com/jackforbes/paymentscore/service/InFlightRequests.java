@@ -0,0 +1,76 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.entity.IdempotencyKeyId;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+Single-flight for idempotent writes on this node: while a request for a key is running, identical
+requests (same key, same request hash) wait for it instead of racing it to the database, and get its
+result back as a replay. Requests reusing the key with a different body are not coalesced; they run
+normally and the stored key decides.
+
+The work must return only after its transaction has committed, so waiters never see uncommitted results.
+ */
+@Component
+public class InFlightRequests {
+
+    private record InFlight(byte[] requestHash, CompletableFuture<Object> result) {}
+
+    private final ConcurrentHashMap<IdempotencyKeyId, InFlight> running = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    public InFlightRequests(MeterRegistry registry) {
+        this.coalesced = Counter.builder("payments.idempotency.coalesced").register(registry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(IdempotencyKeyId id, byte[] requestHash, Supplier<T> work, Function<T, T> asReplay) {
+        InFlight mine = new InFlight(requestHash, new CompletableFuture<>());
+        InFlight current = running.putIfAbsent(id, mine);
+
+        if (current != null && Arrays.equals(current.requestHash(), requestHash)) {
+            coalesced.increment();
+            return asReplay.apply((T) await(current.result()));
+        }
+        if (current != null) {
+            return work.get();
+        }
+
+        try {
+            T result = work.get();
+            mine.result().complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Errors and sneaky-thrown checked exceptions too, or waiters would block forever
+            mine.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(id, mine);
+        }
+    }
+
+    // waiters see the leader's failure as their own, as a sequential retry of the same request would
+    private static Object await(CompletableFuture<Object> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            // a checked exception stays wrapped
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// keeps the most recent events in process; older ones are dropped once capacity is reached
+public class InMemoryPaymentEventSink implements PaymentEventSink {
+
+    private final int capacity;
+    private final ArrayDeque<PaymentEvent> events;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public InMemoryPaymentEventSink(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.events = new ArrayDeque<>(this.capacity);
+    }
+
+    @Override
+    public void publish(List<PaymentEvent> batch) {
+        lock.lock();
+        try {
+            for (PaymentEvent event : batch) {
+                if (events.size() == capacity) {
+                    events.removeFirst();
+                }
+                events.addLast(event);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // oldest first
+    public List<PaymentEvent> events() {
+        lock.lock();
+        try {
+            return List.copyOf(events);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
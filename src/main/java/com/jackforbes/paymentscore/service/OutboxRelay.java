@@ -0,0 +1,107 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+import com.jackforbes.paymentscore.config.OutboxProperties;
+import com.jackforbes.paymentscore.repo.PaymentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/*
+Moves payment events from payment_outbox to the PaymentEventSink. Each batch is taken, published and
+removed in one transaction, so a failed publish leaves the batch to be sent again (at least once).
+Batches are claimed with SKIP LOCKED, so relays on several nodes drain the outbox side by side.
+
+  payments.outbox.relayed   events published
+  payments.outbox.batch     duration of one batch transaction, including the sink
+  payments.outbox.delay     time from the change committing to its event being published
+  payments.outbox.failures  batches the sink or database rejected
+ */
+@Component
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final PaymentRepository repo;
+    private final OutboxProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentEventSink sink;
+    private final Clock clock;
+    private final Counter relayed;
+    private final Timer batches;
+    private final Timer delay;
+    private final Counter failures;
+
+    public OutboxRelay(
+            PaymentRepository repo,
+            OutboxProperties properties,
+            TransactionTemplate transactionTemplate,
+            PaymentEventSink sink,
+            Clock clock,
+            MeterRegistry registry
+    ) {
+        this.repo = repo;
+        this.properties = properties;
+        this.transactionTemplate = transactionTemplate;
+        this.sink = sink;
+        this.clock = clock;
+        this.relayed = Counter.builder("payments.outbox.relayed").register(registry);
+        this.batches = Timer.builder("payments.outbox.batch").register(registry);
+        this.delay = Timer.builder("payments.outbox.delay").publishPercentileHistogram().register(registry);
+        this.failures = Counter.builder("payments.outbox.failures").register(registry);
+    }
+
+    @Scheduled(
+            initialDelayString = "${payments.outbox.interval:200ms}",
+            fixedDelayString = "${payments.outbox.interval:200ms}"
+    )
+    public void scheduledRelay() {
+        if (properties.enabled()) {
+            relay();
+        }
+    }
+
+    // returns the number of events published
+    public int relay() {
+        long deadline = System.nanoTime() + properties.maxRunTime().toNanos();
+        int total = 0;
+        while (true) {
+            List<PaymentEvent> events;
+            try {
+                events = batches.record(() -> transactionTemplate.execute(tx -> {
+                    List<PaymentEvent> batch = repo.takeBatch(properties.batchSize());
+                    if (!batch.isEmpty()) {
+                        sink.publish(batch);
+                    }
+                    return batch;
+                }));
+            } catch (RuntimeException e) {
+                // the batch is back in the outbox; try again on the next run rather than spin on it now
+                failures.increment();
+                log.warn("outbox relay stopped: {}", e.getMessage());
+                return total;
+            }
+
+            Instant now = clock.instant();
+            for (PaymentEvent event : events) {
+                delay.record(Duration.between(event.occurredAt(), now));
+            }
+            total += events.size();
+            relayed.increment(events.size());
+
+            if (events.size() < properties.batchSize() || System.nanoTime() >= deadline) {
+                return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.PaymentCacheProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+import java.util.UUID;
+
+/*
+Bounded in-memory copy of recently read or written payments so status polling doesn't need a
+transaction per request.
+
+Writers on this instance put the new snapshot after commit. A snapshot only replaces one with a lower
+version, so a read that started before a write can't put the older row back over it. Writes this
+instance doesn't see (other instances, manual fixes) show up once the entry's ttl has passed.
+ */
+@Component
+public class PaymentCache {
+
+    private final boolean enabled;
+    private final StripedLruCache<UUID, PaymentResponse> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public PaymentCache(PaymentCacheProperties properties, MeterRegistry registry) {
+        this.enabled = properties.enabled();
+
+        Counter evictions = Counter.builder("payments.cache.evictions").register(registry);
+        this.entries = new StripedLruCache<>(properties.maxSize(), properties.stripes(), properties.ttl(), evictions::increment);
+
+        this.hits = Counter.builder("payments.cache").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("payments.cache").tag("result", "miss").register(registry);
+        Gauge.builder("payments.cache.size", entries, StripedLruCache::size).register(registry);
+    }
+
+    public Optional<PaymentResponse> get(UUID id) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        PaymentResponse payment = entries.get(id);
+        if (payment == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(payment);
+    }
+
+    // the snapshot must be committed: either read outside a write or put after the writer's commit
+    public void put(PaymentResponse payment) {
+        if (!enabled) {
+            return;
+        }
+        entries.putIf(payment.id(), payment, (current, candidate) -> candidate.version() > current.version());
+    }
+
+    public void putAfterCommit(PaymentResponse payment) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            put(payment);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                put(payment);
+            }
+        });
+    }
+
+    public long size() {
+        return entries.size();
+    }
+}
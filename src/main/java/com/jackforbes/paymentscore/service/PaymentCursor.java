@@ -0,0 +1,34 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.repo.PaymentListing;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+// opaque page cursor for GET /payments: the created_at and id of the last payment returned
+final class PaymentCursor {
+
+    private PaymentCursor() {
+    }
+
+    static String encode(PaymentListing.Position position) {
+        String raw = position.createdAt() + "," + position.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static PaymentListing.Position decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int comma = raw.indexOf(',');
+            if (comma < 0) {
+                throw new InvalidInputException("invalid cursor");
+            }
+            return new PaymentListing.Position(Instant.parse(raw.substring(0, comma)), UUID.fromString(raw.substring(comma + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidInputException("invalid cursor");
+        }
+    }
+}
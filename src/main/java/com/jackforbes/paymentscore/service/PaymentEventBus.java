@@ -0,0 +1,163 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.PaymentEventStreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+In-process fan-out of committed payment changes to stream subscribers, by payment or by the client whose
+request made the change. Publishing never blocks: every subscription has a bounded buffer, and one that
+is full is evicted instead of slowing the writer down; its client reconnects and starts from the
+current state again.
+
+Only changes committed on this instance are seen; each instance serves its own streams.
+
+  payments.events.subscribers  open subscriptions
+  payments.events.delivered    changes queued for a subscriber
+  payments.events.evicted      subscriptions dropped because their buffer was full
+ */
+@Component
+public class PaymentEventBus {
+
+    // clientId is null for changes no client asked for, like voids
+    public record Change(String clientId, PaymentResponse payment) {}
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Map<UUID, Set<Subscription>> byPayment = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscription>> byClient = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    private final Counter delivered;
+    private final Counter evicted;
+
+    public PaymentEventBus(PaymentEventStreamProperties properties, MeterRegistry registry) {
+        this.bufferSize = Math.max(1, properties.bufferSize());
+        this.maxSubscribers = properties.maxSubscribers();
+        this.delivered = Counter.builder("payments.events.delivered").register(registry);
+        this.evicted = Counter.builder("payments.events.evicted").register(registry);
+        Gauge.builder("payments.events.subscribers", subscribers, AtomicInteger::get).register(registry);
+    }
+
+    public Subscription subscribeToPayment(UUID paymentId) {
+        return subscribe(byPayment, paymentId);
+    }
+
+    public Subscription subscribeToClient(String clientId) {
+        return subscribe(byClient, clientId);
+    }
+
+    // the payment must be committed: call this outside a transaction, or use publishAfterCommit
+    public void publish(String clientId, PaymentResponse payment) {
+        Change change = new Change(clientId, payment);
+        deliver(byPayment.get(payment.id()), change);
+        if (clientId != null) {
+            deliver(byClient.get(clientId), change);
+        }
+    }
+
+    public void publishAfterCommit(String clientId, PaymentResponse payment) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(clientId, payment);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(clientId, payment);
+            }
+        });
+    }
+
+    public int subscribers() {
+        return subscribers.get();
+    }
+
+    private <K> Subscription subscribe(Map<K, Set<Subscription>> index, K key) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            throw new TooManySubscribersException("this instance already serves " + maxSubscribers + " event streams");
+        }
+        Subscription subscription = new Subscription();
+        subscription.unregister = () -> index.computeIfPresent(key, (k, set) -> {
+            set.remove(subscription);
+            return set.isEmpty() ? null : set;
+        });
+        index.compute(key, (k, set) -> {
+            Set<Subscription> subscriptions = set == null ? ConcurrentHashMap.newKeySet() : set;
+            subscriptions.add(subscription);
+            return subscriptions;
+        });
+        return subscription;
+    }
+
+    private void deliver(Set<Subscription> subscriptions, Change change) {
+        if (subscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(change);
+        }
+    }
+
+    public final class Subscription implements AutoCloseable {
+
+        private final ArrayBlockingQueue<Change> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private Runnable unregister;
+        private volatile boolean evictedAsSlow;
+
+        private Subscription() {
+        }
+
+        // the next change, or null if none arrives within timeout
+        public Change poll(Duration timeout) throws InterruptedException {
+            return buffer.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        // true once the subscription was dropped for falling behind; queued changes are stale by then
+        public boolean isEvicted() {
+            return evictedAsSlow;
+        }
+
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                unregister.run();
+                subscribers.decrementAndGet();
+            }
+        }
+
+        private void offer(Change change) {
+            if (closed.get()) {
+                return;
+            }
+            if (buffer.offer(change)) {
+                delivered.increment();
+                return;
+            }
+            evictedAsSlow = true;
+            evicted.increment();
+            close();
+        }
+    }
+}
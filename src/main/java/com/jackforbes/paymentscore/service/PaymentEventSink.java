@@ -0,0 +1,15 @@
+package com.jackforbes.paymentscore.service;
+
+import com.jackforbes.paymentscore.api.PaymentEvent;
+
+import java.util.List;
+
+/*
+Receives batches of outbox events from OutboxRelay, in sequence order. publish runs inside the relay's
+transaction: returning commits the batch's removal from the outbox, throwing leaves the whole batch
+there to be published again, so a sink can see an event more than once.
+ */
+public interface PaymentEventSink {
+
+    void publish(List<PaymentEvent> events);
+}
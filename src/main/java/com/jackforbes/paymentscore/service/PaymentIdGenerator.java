@@ -0,0 +1,11 @@
+package com.jackforbes.paymentscore.service;
+
+import java.util.UUID;
+
+/*
+Source of primary keys for new payments; see IdGeneratorConfig for the available implementations
+ */
+public interface PaymentIdGenerator {
+
+    UUID next();
+}
@@ -0,0 +1,70 @@
+package com.jackforbes.paymentscore.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+Timers for PaymentService operations:
+
+  payments.operation{operation, outcome}  whole call, including waiting for a connection and commit
+  payments.db{operation}                  time spent inside database transactions for that call
+
+Both publish percentile histograms, so p99 of total vs DB time can be compared per operation.
+ */
+@Component
+public class PaymentMetrics {
+
+    private final MeterRegistry registry;
+
+    public PaymentMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <T> T operation(String operation, Function<T, String> outcome, Supplier<T> work) {
+        long start = System.nanoTime();
+        String result = "error";
+        try {
+            T value = work.get();
+            result = outcome.apply(value);
+            return value;
+        } catch (RuntimeException e) {
+            result = outcomeOf(e);
+            throw e;
+        } finally {
+            Timer.builder("payments.operation")
+                    .tag("operation", operation)
+                    .tag("outcome", result)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <T> T database(String operation, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            Timer.builder("payments.db")
+                    .tag("operation", operation)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String outcomeOf(RuntimeException e) {
+        if (e instanceof IdempotencyMismatchException) return "mismatch";
+        if (e instanceof InvalidTransitionException) return "invalid_transition";
+        if (e instanceof OptimisticLockingFailureException) return "conflict";
+        if (e instanceof PaymentNotFoundException) return "not_found";
+        if (e instanceof InvalidInputException) return "invalid_input";
+        return "error";
+    }
+}
@@ -1,114 +1,376 @@
 package com.jackforbes.paymentscore.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jackforbes.paymentscore.api.AuthorisePaymentRequest;
+import com.jackforbes.paymentscore.api.PaymentHistory;
+import com.jackforbes.paymentscore.api.PaymentPage;
 import com.jackforbes.paymentscore.api.PaymentResponse;
+import com.jackforbes.paymentscore.config.AuthoriseBatchProperties;
+import com.jackforbes.paymentscore.config.PaymentLedgerProperties;
+import com.jackforbes.paymentscore.config.PaymentListingProperties;
+import com.jackforbes.paymentscore.entity.IdempotencyKeyId;
 import com.jackforbes.paymentscore.entity.Payment;
 import com.jackforbes.paymentscore.entity.PaymentState;
+import com.jackforbes.paymentscore.repo.MutationOutcome;
+import com.jackforbes.paymentscore.repo.PaymentListing;
 import com.jackforbes.paymentscore.repo.PaymentRepository;
-import org.springframework.transaction.annotation.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Clock;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 @Service
 public class PaymentService {
 
+    private static final Logger log = LoggerFactory.getLogger(PaymentService.class);
+
     private final PaymentRepository paymentRepository;
     private final Clock clock;
     private final IdempotencyService idempotencyService;
+    private final RequestHasher requestHasher;
+    private final InFlightRequests inFlightRequests;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final PaymentMetrics metrics;
+    private final AuthoriseBatchProperties batchProperties;
+    private final PaymentIdGenerator idGenerator;
+    private final PaymentCache paymentCache;
+    private final PaymentListingProperties listingProperties;
+    private final PaymentEventBus eventBus;
+    private final PaymentLedgerProperties ledgerProperties;
 
-    public PaymentService(PaymentRepository paymentRepository, Clock clock, IdempotencyService idempotencyService) {
+    public PaymentService(
+            PaymentRepository paymentRepository,
+            Clock clock,
+            IdempotencyService idempotencyService,
+            RequestHasher requestHasher,
+            InFlightRequests inFlightRequests,
+            TransactionTemplate transactionTemplate,
+            PaymentMetrics metrics,
+            AuthoriseBatchProperties batchProperties,
+            PaymentIdGenerator idGenerator,
+            PaymentCache paymentCache,
+            PaymentListingProperties listingProperties,
+            PaymentEventBus eventBus,
+            PaymentLedgerProperties ledgerProperties
+    ) {
         this.paymentRepository = paymentRepository;
         this.clock = clock;
         this.idempotencyService = idempotencyService;
+        this.requestHasher = requestHasher;
+        this.inFlightRequests = inFlightRequests;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.metrics = metrics;
+        this.batchProperties = batchProperties;
+        this.idGenerator = idGenerator;
+        this.paymentCache = paymentCache;
+        this.listingProperties = listingProperties;
+        this.eventBus = eventBus;
+        this.ledgerProperties = ledgerProperties;
     }
 
-    @Transactional
+    // transactions are opened here rather than by @Transactional so the timers include the commit
     public Payment authorise(long amount, String currency){
-        Instant now = Instant.now(clock);
-        Payment payment = Payment.authorised(UUID.randomUUID(), amount, currency, now);
-        return paymentRepository.save(payment);
+        return metrics.operation("authorise", payment -> "fresh", () -> {
+            Instant now = now();
+            Payment payment = Payment.authorised(idGenerator.next(), amount, currency, now);
+            Payment saved = metrics.database("authorise", () -> transactionTemplate.execute(tx -> paymentRepository.save(payment)));
+            // new payments are usually polled right away
+            paymentCache.put(PaymentResponse.from(saved));
+            return saved;
+        });
+    }
+
+    /*
+    Items must already be valid. Each chunk is inserted as one JDBC batch and committed on its own, so a
+    large batch never holds one long transaction; if a chunk fails, it and the chunks after it are
+    reported as failed while earlier chunks stay stored.
+     */
+    public List<AuthoriseBatchItem> authoriseBatch(List<AuthorisePaymentRequest> items) {
+        checkBatchSize(items.size());
+        return metrics.operation("authorise_batch",
+                results -> results.stream().allMatch(AuthoriseBatchItem::isStored) ? "fresh" : "error",
+                () -> {
+                    Instant now = now();
+                    List<AuthoriseBatchItem> results = new ArrayList<>(items.size());
+                    String failure = null;
+
+                    for (int from = 0; from < items.size(); from += batchProperties.chunkSize()) {
+                        List<AuthorisePaymentRequest> chunk = items.subList(from, Math.min(from + batchProperties.chunkSize(), items.size()));
+                        if (failure == null) {
+                            List<Payment> payments = chunk.stream()
+                                    .map(item -> Payment.authorised(idGenerator.next(), item.amount(), item.currency(), now))
+                                    .toList();
+                            try {
+                                metrics.database("authorise_batch", () -> transactionTemplate.execute(tx -> {
+                                    paymentRepository.insertAll(payments);
+                                    return null;
+                                }));
+                                payments.forEach(payment -> results.add(AuthoriseBatchItem.stored(payment)));
+                                continue;
+                            } catch (DataAccessException | TransactionException e) {
+                                // the driver's message can carry SQL and connection details, so it stays in the log
+                                log.warn("authorise batch chunk not stored", e);
+                                failure = "not stored: database unavailable, retry";
+                            }
+                        }
+                        for (int i = 0; i < chunk.size(); i++) {
+                            results.add(AuthoriseBatchItem.failed(failure));
+                        }
+                    }
+                    return results;
+                });
     }
 
-    @Transactional(readOnly = true)
-    public Payment getById(UUID id) {
-        return paymentRepository.findById(id).orElseThrow(() -> new PaymentNotFoundException(id));
+    // exposed so the controller can reject an oversized batch before validating its items one by one
+    public void checkBatchSize(int items) {
+        if (items < 1 || items > batchProperties.maxItems()) {
+            throw new InvalidInputException("batch must contain between 1 and " + batchProperties.maxItems() + " items");
+        }
+    }
+
+    public PaymentResponse getById(UUID id) {
+        return metrics.operation("get", payment -> "found", () -> {
+            var cached = paymentCache.get(id);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            // a single statement, so no transaction is opened for it
+            PaymentResponse payment = metrics.database("get", () -> snapshot(id));
+            paymentCache.put(payment);
+            return payment;
+        });
     }
 
-    @Transactional
+    // one page in (created_at, id) order; cursor is the nextCursor of the previous page, or null for the first
+    public PaymentPage list(PaymentListing.Filter filter, String cursor, Integer limit) {
+        int pageSize = limit == null ? listingProperties.defaultLimit() : limit;
+        if (pageSize < 1 || pageSize > listingProperties.maxLimit()) {
+            throw new InvalidInputException("limit must be between 1 and " + listingProperties.maxLimit());
+        }
+        checkFilter(filter);
+        PaymentListing.Position after = cursor == null ? null : PaymentCursor.decode(cursor);
+
+        return metrics.operation("list", page -> "found", () -> {
+            // one extra row tells whether another page follows
+            List<PaymentResponse> rows = metrics.database("list", () ->
+                    readOnlyTransaction.execute(tx -> paymentRepository.list(filter, after, pageSize + 1)));
+            if (rows.size() <= pageSize) {
+                return new PaymentPage(rows, null);
+            }
+            List<PaymentResponse> items = rows.subList(0, pageSize);
+            PaymentResponse last = items.getLast();
+            return new PaymentPage(items, PaymentCursor.encode(new PaymentListing.Position(last.createdAt(), last.id())));
+        });
+    }
+
+    // one page of the payment's ledger; after is the nextAfter of the previous page, or null for the first
+    public PaymentHistory history(UUID id, Long after, Integer limit) {
+        int pageSize = limit == null ? ledgerProperties.historyDefaultLimit() : limit;
+        if (pageSize < 1 || pageSize > ledgerProperties.historyMaxLimit()) {
+            throw new InvalidInputException("limit must be between 1 and " + ledgerProperties.historyMaxLimit());
+        }
+        if (after != null && after < 0) {
+            throw new InvalidInputException("after must be >= 0");
+        }
+
+        return metrics.operation("history", history -> "found", () -> {
+            // amount and currency never change, so any snapshot will do
+            PaymentResponse payment = paymentCache.get(id).orElseGet(() -> metrics.database("history", () -> snapshot(id)));
+            // one extra entry tells whether another page follows
+            List<PaymentHistory.Entry> entries = metrics.database("history", () ->
+                    paymentRepository.history(id, after == null ? 0 : after, pageSize + 1));
+            Long nextAfter = null;
+            if (entries.size() > pageSize) {
+                entries = entries.subList(0, pageSize);
+                nextAfter = entries.getLast().sequence();
+            }
+            return new PaymentHistory(payment.id(), payment.amount(), payment.currency(), entries, nextAfter);
+        });
+    }
+
+    /*
+    Passes every matching payment to sink in (created_at, id) order while holding one read-only
+    transaction and connection. The cursor only advances as fast as sink consumes, so a slow client
+    slows the query down instead of filling memory.
+     */
+    public long export(PaymentListing.Filter filter, Consumer<PaymentResponse> sink) {
+        checkFilter(filter);
+        return metrics.operation("export", count -> "found", () -> metrics.database("export", () ->
+                readOnlyTransaction.execute(tx -> paymentRepository.export(filter, sink))));
+    }
+
+    // exposed so streaming callers can reject a bad filter before they start the response
+    public void checkFilter(PaymentListing.Filter filter) {
+        if (filter.from() != null && filter.to() != null && !filter.from().isBefore(filter.to())) {
+            throw new InvalidInputException("from must be before to");
+        }
+    }
+
+    // the current version for a conditional GET: from the cache, or a version-only query
+    public int versionOf(UUID id) {
+        return metrics.operation("get_version", version -> "found", () -> {
+            var cached = paymentCache.get(id);
+            if (cached.isPresent()) {
+                return cached.get().version();
+            }
+            return metrics.database("get_version", () ->
+                    paymentRepository.findVersionById(id).orElseThrow(() -> new PaymentNotFoundException(id)));
+        });
+    }
+
+    // not transactional itself: duplicates wait in InFlightRequests without holding a connection
     public CaptureResult capture(UUID id, String clientId, String idempotencyKey, long captureAmount) {
-        Instant now = Instant.now(clock);
+        return metrics.operation("capture", result -> result.replayed() ? "replay" : "fresh",
+                () -> captureInstrumented(id, clientId, idempotencyKey, captureAmount));
+    }
+
+    private CaptureResult captureInstrumented(UUID id, String clientId, String idempotencyKey, long captureAmount) {
+        Instant now = now();
 
         if (captureAmount <= 0) {
             throw new InvalidInputException("captureAmount must be > 0");
         }
 
-        String canonical = "CAPTURE|paymentId=" + id + "|amount=" + captureAmount;
-        String hash = idempotencyService.hash(canonical);
+        byte[] hash = requestHasher.hash(RequestHasher.Operation.CAPTURE, id, captureAmount);
 
-        var replay = idempotencyService.checkReplayOrThrow(clientId, idempotencyKey, hash);
-        if (replay.isPresent()) {
-            return CaptureResult.replay(replay.get().status(), replay.get().paymentId());
+        var cached = idempotencyService.cachedReplayOrThrow(clientId, idempotencyKey, hash);
+        if (cached.isPresent()) {
+            UUID paymentId = cached.get().paymentId();
+            return CaptureResult.replay(cached.get().status(), metrics.database("capture", () -> snapshot(paymentId)));
         }
 
-        Payment payment = paymentRepository.findById(id).orElseThrow(() -> new PaymentNotFoundException(id));
+        return inFlightRequests.execute(
+                new IdempotencyKeyId(clientId, idempotencyKey),
+                hash,
+                () -> metrics.database("capture", () ->
+                        transactionTemplate.execute(tx -> captureOnce(id, clientId, idempotencyKey, captureAmount, hash, now))),
+                done -> CaptureResult.replay(done.status(), done.payment())
+        );
+    }
 
-        if (payment.getState() != PaymentState.AUTHORISED &&
-                payment.getState() != PaymentState.PARTIALLY_CAPTURED) {
-            throw new InvalidTransitionException("Illegal capture in state " + payment.getState());
+    private CaptureResult captureOnce(UUID id, String clientId, String idempotencyKey, long captureAmount, byte[] hash, Instant now) {
+        MutationOutcome outcome = paymentRepository.captureIdempotently(id, captureAmount, clientId, idempotencyKey, hash, now);
+        if (!outcome.claimed()) {
+            var replay = replayOf(outcome, clientId, idempotencyKey, hash);
+            return CaptureResult.replay(replay.status(), replay.payment());
         }
-
-        long newCaptured = payment.getCapturedAmount() + captureAmount;
-        if (newCaptured > payment.getAmount()) {
-            throw new InvalidTransitionException("Capture would exceed authorised amount");
+        if (outcome.payment() == null) {
+            throw captureRejected(id);
         }
 
-        payment.capture(captureAmount, now);
-        paymentRepository.save(payment);
-
-        idempotencyService.storeSuccess(clientId, idempotencyKey, hash, 200, payment.getId(), now);
-        return CaptureResult.fresh(200, payment.getId());
+        idempotencyService.rememberAfterCommit(clientId, idempotencyKey, hash, 200, id);
+        paymentCache.putAfterCommit(outcome.payment());
+        eventBus.publishAfterCommit(clientId, outcome.payment());
+        return CaptureResult.fresh(200, outcome.payment());
     }
 
 
-    @Transactional
+    // not transactional itself: duplicates wait in InFlightRequests without holding a connection
     public RefundResult refund(UUID id, String clientId, String idempotencyKey, long refundAmount) {
-        Instant now = Instant.now(clock);
+        return metrics.operation("refund", result -> result.replayed() ? "replay" : "fresh",
+                () -> refundInstrumented(id, clientId, idempotencyKey, refundAmount));
+    }
+
+    private RefundResult refundInstrumented(UUID id, String clientId, String idempotencyKey, long refundAmount) {
+        Instant now = now();
 
         if (refundAmount <= 0) {
             throw new InvalidInputException("refundAmount must be > 0");
         }
 
-        String canonical = "REFUND|paymentId=" + id + "|amount=" + refundAmount;
-        String hash = idempotencyService.hash(canonical);
+        byte[] hash = requestHasher.hash(RequestHasher.Operation.REFUND, id, refundAmount);
 
-        var replay = idempotencyService.checkReplayOrThrow(clientId, idempotencyKey, hash);
-        if (replay.isPresent()) {
-            return RefundResult.replay(replay.get().status(), replay.get().paymentId());
+        var cached = idempotencyService.cachedReplayOrThrow(clientId, idempotencyKey, hash);
+        if (cached.isPresent()) {
+            UUID paymentId = cached.get().paymentId();
+            return RefundResult.replay(cached.get().status(), metrics.database("refund", () -> snapshot(paymentId)));
         }
 
-        Payment payment = paymentRepository.findById(id)
-                .orElseThrow(() -> new PaymentNotFoundException(id));
+        return inFlightRequests.execute(
+                new IdempotencyKeyId(clientId, idempotencyKey),
+                hash,
+                () -> metrics.database("refund", () ->
+                        transactionTemplate.execute(tx -> refundOnce(id, clientId, idempotencyKey, refundAmount, hash, now))),
+                done -> RefundResult.replay(done.status(), done.payment())
+        );
+    }
 
-        if (payment.getState() != PaymentState.CAPTURED &&
-                payment.getState() != PaymentState.PARTIALLY_CAPTURED &&
-                payment.getState() != PaymentState.PARTIALLY_REFUNDED) {
-            throw new InvalidTransitionException("Illegal refund in state " + payment.getState());
+    private RefundResult refundOnce(UUID id, String clientId, String idempotencyKey, long refundAmount, byte[] hash, Instant now) {
+        MutationOutcome outcome = paymentRepository.refundIdempotently(id, refundAmount, clientId, idempotencyKey, hash, now);
+        if (!outcome.claimed()) {
+            var replay = replayOf(outcome, clientId, idempotencyKey, hash);
+            return RefundResult.replay(replay.status(), replay.payment());
+        }
+        if (outcome.payment() == null) {
+            throw refundRejected(id);
+        }
+
+        idempotencyService.rememberAfterCommit(clientId, idempotencyKey, hash, 200, id);
+        paymentCache.putAfterCommit(outcome.payment());
+        eventBus.publishAfterCommit(clientId, outcome.payment());
+        return RefundResult.fresh(200, outcome.payment());
+    }
+
+    private record ReplayedResponse(int status, PaymentResponse payment) {}
+
+    /*
+    The key was already taken. Usually the statement saw the stored record and the payment it points at;
+    if the other request committed after the statement started we have to look it up again.
+     */
+    private ReplayedResponse replayOf(MutationOutcome outcome, String clientId, String idempotencyKey, byte[] hash) {
+        if (outcome.existingRequestHash() != null) {
+            var replay = idempotencyService.replayOrThrow(clientId, idempotencyKey, hash, outcome.existingRequestHash(),
+                    outcome.existingStatus(), outcome.payment().id());
+            return new ReplayedResponse(replay.status(), outcome.payment());
         }
+        var replay = idempotencyService.checkReplayOrThrow(clientId, idempotencyKey, hash)
+                .orElseThrow(() -> new IllegalStateException("idempotency key vanished while replaying clientId=" + clientId));
+        return new ReplayedResponse(replay.status(), snapshot(replay.paymentId()));
+    }
+
+    // the guard matched nothing, so re-read the row to explain why; its state is never behind the ledger
+    private RuntimeException captureRejected(UUID id) {
+        Payment payment = paymentRepository.findById(id).orElseThrow(() -> new PaymentNotFoundException(id));
+
+        if (payment.getState() != PaymentState.AUTHORISED &&
+                payment.getState() != PaymentState.PARTIALLY_CAPTURED) {
+            return new InvalidTransitionException("Illegal capture in state " + payment.getState());
+        }
+        return new InvalidTransitionException("Capture would exceed authorised amount");
+    }
 
-        long newRefunded = payment.getRefundedAmount() + refundAmount;
+    private RuntimeException refundRejected(UUID id) {
+        Payment payment = paymentRepository.findById(id).orElseThrow(() -> new PaymentNotFoundException(id));
 
-        if (newRefunded > payment.getCapturedAmount()) {
-            throw new InvalidTransitionException("Refund would exceed captured amount");
+        if (payment.getState() != PaymentState.CAPTURED &&
+                payment.getState() != PaymentState.PARTIALLY_CAPTURED &&
+                payment.getState() != PaymentState.PARTIALLY_REFUNDED) {
+            return new InvalidTransitionException("Illegal refund in state " + payment.getState());
         }
+        return new InvalidTransitionException("Refund would exceed captured amount");
+    }
 
-        payment.refund(refundAmount, now);
-        paymentRepository.save(payment);
+    // Postgres keeps microseconds, so responses built in memory must match what a later read returns
+    private Instant now() {
+        return Instant.now(clock).truncatedTo(ChronoUnit.MICROS);
+    }
 
-        idempotencyService.storeSuccess(clientId, idempotencyKey, hash, 200, payment.getId(), now);
-        return RefundResult.fresh(200, payment.getId());
+    // the payment as it is now, inside the caller's transaction if there is one
+    private PaymentResponse snapshot(UUID paymentId) {
+        return paymentRepository.findResponseById(paymentId)
+                .orElseThrow(() -> new PaymentNotFoundException(paymentId));
     }
 
 }
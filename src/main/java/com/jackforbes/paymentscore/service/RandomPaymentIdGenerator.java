@@ -0,0 +1,12 @@
+package com.jackforbes.paymentscore.service;
+
+import java.util.UUID;
+
+// version 4 ids: every insert lands on a random page of the primary key index
+public class RandomPaymentIdGenerator implements PaymentIdGenerator {
+
+    @Override
+    public UUID next() {
+        return UUID.randomUUID();
+    }
+}
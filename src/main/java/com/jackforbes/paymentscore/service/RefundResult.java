@@ -1,14 +1,23 @@
 package com.jackforbes.paymentscore.service;
 
+import com.jackforbes.paymentscore.api.PaymentResponse;
+
 import java.util.UUID;
 
-public record RefundResult(int status, UUID paymentId, boolean replayed) {
+/*
+Outcome of a refund, carrying the payment snapshot so callers don't need to read it back
+ */
+public record RefundResult(int status, PaymentResponse payment, boolean replayed) {
+
+    public static RefundResult fresh(int status, PaymentResponse payment) {
+        return new RefundResult(status, payment, false);
+    }
 
-    public static RefundResult fresh(int status, UUID paymentId) {
-        return new RefundResult(status, paymentId, false);
+    public static RefundResult replay(int status, PaymentResponse payment) {
+        return new RefundResult(status, payment, true);
     }
 
-    public static RefundResult replay(int status, UUID paymentId) {
-        return new RefundResult(status, paymentId, true);
+    public UUID paymentId() {
+        return payment.id();
     }
 }
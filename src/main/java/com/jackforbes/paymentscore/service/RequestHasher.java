@@ -0,0 +1,112 @@
+package com.jackforbes.paymentscore.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/*
+SHA-256 of the canonical form of a write request, e.g. "CAPTURE|paymentId=<uuid>|amount=<n>".
+
+The canonical bytes are written straight into a reusable buffer instead of building the String, and
+digests come from a small pool rather than MessageDigest.getInstance per call. A pool (not a ThreadLocal)
+keeps this cheap under virtual threads, where every request has its own thread. The output is identical to
+hashing the canonical String, so keys stored by earlier versions still replay.
+ */
+@Component
+public class RequestHasher {
+
+    public static final int HASH_LENGTH = 32;
+
+    public enum Operation {
+        CAPTURE, REFUND;
+
+        private final byte[] prefix = (name() + "|paymentId=").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final byte[] AMOUNT = "|amount=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int POOL_SIZE = 64;
+
+    private static final class Scratch {
+        final MessageDigest digest;
+        final byte[] buffer = new byte[64];
+
+        Scratch() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+
+    // ArrayBlockingQueue is lock-based (ReentrantLock), so a parked virtual thread doesn't pin its carrier
+    private final ArrayBlockingQueue<Scratch> pool = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public byte[] hash(Operation operation, UUID paymentId, long amount) {
+        Scratch scratch = pool.poll();
+        if (scratch == null) {
+            scratch = new Scratch();
+        }
+        try {
+            MessageDigest digest = scratch.digest;
+            byte[] buffer = scratch.buffer;
+
+            digest.update(operation.prefix);
+            writeUuid(buffer, paymentId);
+            digest.update(buffer, 0, 36);
+            digest.update(AMOUNT);
+            int start = writeLong(buffer, amount);
+            digest.update(buffer, start, buffer.length - start);
+
+            return digest.digest();
+        } finally {
+            scratch.digest.reset();
+            pool.offer(scratch);
+        }
+    }
+
+    // same layout as UUID.toString(): 8-4-4-4-12 lowercase hex
+    private static void writeUuid(byte[] buffer, UUID id) {
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        writeHex(buffer, 0, msb >>> 32, 8);
+        buffer[8] = '-';
+        writeHex(buffer, 9, msb >>> 16, 4);
+        buffer[13] = '-';
+        writeHex(buffer, 14, msb, 4);
+        buffer[18] = '-';
+        writeHex(buffer, 19, lsb >>> 48, 4);
+        buffer[23] = '-';
+        writeHex(buffer, 24, lsb, 12);
+    }
+
+    private static void writeHex(byte[] buffer, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    // writes Long.toString(value) right-aligned at the end of the buffer, returns its start offset
+    private static int writeLong(byte[] buffer, long value) {
+        int pos = buffer.length;
+        boolean negative = value < 0;
+        if (!negative) {
+            value = -value;
+        }
+        do {
+            buffer[--pos] = (byte) ('0' - (value % 10));
+            value /= 10;
+        } while (value != 0);
+        if (negative) {
+            buffer[--pos] = '-';
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,127 @@
+package com.jackforbes.paymentscore.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+
+/*
+Bounded map shared by the in-memory caches. Keys are spread over independently locked LRU stripes;
+each stripe holds maxSize / stripes entries and drops entries older than the ttl on read.
+ */
+final class StripedLruCache<K, V> {
+
+    private record Timestamped<V>(V value, long expiresAt) {}
+
+    private final long ttlNanos;
+    private final List<Stripe> stripes;
+    private final Runnable onEviction;
+
+    StripedLruCache(int maxSize, int stripes, Duration ttl, Runnable onEviction) {
+        this.ttlNanos = ttl.toNanos();
+        this.onEviction = onEviction;
+
+        // power of two so the stripe can be picked with a mask
+        int count = Integer.highestOneBit(Math.max(1, stripes));
+        int perStripe = Math.max(1, maxSize / count);
+        // a List, as an array of the inner Stripe class can only be created raw
+        List<Stripe> created = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            created.add(new Stripe(perStripe));
+        }
+        this.stripes = List.copyOf(created);
+    }
+
+    V get(K key) {
+        return stripeFor(key).get(key, System.nanoTime());
+    }
+
+    void put(K key, V value) {
+        putIf(key, value, (current, candidate) -> true);
+    }
+
+    // stores value unless an unexpired entry exists that replace rejects
+    void putIf(K key, V value, BiPredicate<V, V> replace) {
+        stripeFor(key).put(key, value, replace, System.nanoTime());
+    }
+
+    long size() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private Stripe stripeFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return stripes.get(h & (stripes.size() - 1));
+    }
+
+    // ReentrantLock rather than synchronized so waiting virtual threads don't pin their carrier
+    private final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Timestamped<V>> entries;
+
+        Stripe(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Timestamped<V>> eldest) {
+                    if (size() > capacity) {
+                        onEviction.run();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        V get(K key, long now) {
+            lock.lock();
+            try {
+                return live(key, now);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(K key, V value, BiPredicate<V, V> replace, long now) {
+            lock.lock();
+            try {
+                V current = live(key, now);
+                if (current == null || replace.test(current, value)) {
+                    entries.put(key, new Timestamped<>(value, now + ttlNanos));
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private V live(K key, long now) {
+            Timestamped<V> timestamped = entries.get(key);
+            if (timestamped == null) {
+                return null;
+            }
+            if (now - timestamped.expiresAt() >= 0) {
+                entries.remove(key);
+                onEviction.run();
+                return null;
+            }
+            return timestamped.value();
+        }
+    }
+}
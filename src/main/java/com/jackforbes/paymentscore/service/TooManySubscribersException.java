@@ -0,0 +1,7 @@
+package com.jackforbes.paymentscore.service;
+
+public class TooManySubscribersException extends RuntimeException {
+    public TooManySubscribersException(String message) {
+        super(message);
+    }
+}
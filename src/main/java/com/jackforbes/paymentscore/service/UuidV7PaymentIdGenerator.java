@@ -0,0 +1,53 @@
+package com.jackforbes.paymentscore.service;
+
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+RFC 9562 version 7 ids: 48-bit Unix milliseconds, then a 12-bit sequence in rand_a, then 62 random bits.
+New ids sort after older ones, so inserts append to the right edge of the primary key index instead of
+dirtying random pages.
+
+Timestamp and sequence are advanced together with one CAS, so ids are strictly increasing across threads.
+A new millisecond starts the sequence at a random point in its lower half; if a millisecond runs out of
+sequence values, or the clock steps back, the counter carries into the timestamp and keeps going up.
+ */
+public class UuidV7PaymentIdGenerator implements PaymentIdGenerator {
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    // unix millis << SEQUENCE_BITS | sequence, of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    public UuidV7PaymentIdGenerator(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public UUID next() {
+        long stamp = nextStamp();
+        long millis = stamp >>> SEQUENCE_BITS;
+        long sequence = stamp & ((1L << SEQUENCE_BITS) - 1);
+
+        long msb = (millis << 16) | VERSION | sequence;
+        long lsb = VARIANT | (random.nextLong() >>> 2);
+        return new UUID(msb, lsb);
+    }
+
+    private long nextStamp() {
+        while (true) {
+            long previous = last.get();
+            long fresh = (clock.millis() << SEQUENCE_BITS) | random.nextInt(1 << (SEQUENCE_BITS - 1));
+            long next = (fresh >>> SEQUENCE_BITS) > (previous >>> SEQUENCE_BITS) ? fresh : previous + 1;
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+}
@@ -0,0 +1,6 @@
+-- request hashes are raw SHA-256 digests now; existing rows held them hex-encoded
+ALTER TABLE idempotency_keys
+    ALTER COLUMN request_hash TYPE BYTEA USING decode(request_hash, 'hex');
+
+ALTER TABLE idempotency_keys
+    ADD CONSTRAINT idempotency_keys_request_hash_length CHECK (octet_length(request_hash) = 32);
@@ -0,0 +1,47 @@
+-- idempotency_keys becomes range-partitioned by day, so expired keys are removed by dropping a partition
+-- instead of deleting rows. created_on is the UTC date of created_at; it has to be part of the primary
+-- key, which therefore only guarantees uniqueness within a day. Claims check earlier days themselves
+-- (see IdempotentPaymentMutationsImpl).
+ALTER TABLE idempotency_keys RENAME TO idempotency_keys_unpartitioned;
+ALTER INDEX idempotency_keys_pkey RENAME TO idempotency_keys_unpartitioned_pkey;
+ALTER INDEX idx_idempotency_created_at RENAME TO idx_idempotency_unpartitioned_created_at;
+
+CREATE TABLE idempotency_keys (
+    client_id TEXT NOT NULL,
+    idem_key TEXT NOT NULL,
+    request_hash BYTEA NOT NULL,
+
+    response_status INT NOT NULL CHECK (response_status BETWEEN 100 AND 599),
+    payment_id UUID NOT NULL,
+
+    created_at TIMESTAMPTZ NOT NULL,
+    created_on DATE NOT NULL,
+
+    CONSTRAINT idempotency_keys_request_hash_length CHECK (octet_length(request_hash) = 32),
+    PRIMARY KEY (client_id, idem_key, created_on)
+) PARTITION BY RANGE (created_on);
+
+CREATE INDEX idx_idempotency_created_at ON idempotency_keys (created_at);
+
+-- partitions for the existing rows and the next week; IdempotencyPartitionMaintainer takes over from here
+DO $$
+DECLARE
+    today DATE := (now() AT TIME ZONE 'UTC')::date;
+    day DATE;
+BEGIN
+    SELECT LEAST(today, COALESCE(min((created_at AT TIME ZONE 'UTC')::date), today))
+    INTO day
+    FROM idempotency_keys_unpartitioned;
+
+    WHILE day <= today + 7 LOOP
+        EXECUTE format('CREATE TABLE %I PARTITION OF idempotency_keys FOR VALUES FROM (%L) TO (%L)',
+                       'idempotency_keys_p' || to_char(day, 'YYYYMMDD'), day, day + 1);
+        day := day + 1;
+    END LOOP;
+END $$;
+
+INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+SELECT client_id, idem_key, request_hash, response_status, payment_id, created_at, (created_at AT TIME ZONE 'UTC')::date
+FROM idempotency_keys_unpartitioned;
+
+DROP TABLE idempotency_keys_unpartitioned;
@@ -0,0 +1,5 @@
+-- keyset pagination for GET /payments: each page is one index range scan starting at the cursor.
+-- state is deliberately not indexed: it changes on most updates, and indexing it would make those
+-- updates non-HOT; state filters are applied to the rows read along these indexes.
+CREATE INDEX idx_payments_created_at_id ON payments (created_at, id);
+CREATE INDEX idx_payments_currency_created_at_id ON payments (currency, created_at, id);
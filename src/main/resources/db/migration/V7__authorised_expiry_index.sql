@@ -0,0 +1,3 @@
+-- lets the authorisation voider find the oldest uncaptured payments without scanning the table;
+-- rows leave the index as soon as they are captured or voided, so it stays small
+CREATE INDEX idx_payments_authorised_created_at ON payments (created_at) WHERE state = 'AUTHORISED';
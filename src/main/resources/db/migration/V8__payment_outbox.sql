@@ -0,0 +1,13 @@
+-- payment events written in the same transaction as the change they describe and deleted once the
+-- relay has handed them to the sink; sequence orders them, version orders one payment's events
+CREATE TABLE payment_outbox (
+    sequence BIGINT GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    payment_id UUID NOT NULL,
+    type VARCHAR(16) NOT NULL,
+    amount BIGINT NOT NULL,
+    state payment_state NOT NULL,
+    captured_amount BIGINT NOT NULL,
+    refunded_amount BIGINT NOT NULL,
+    version INT NOT NULL,
+    occurred_at TIMESTAMPTZ NOT NULL
+);
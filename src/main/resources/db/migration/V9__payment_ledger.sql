@@ -0,0 +1,43 @@
+-- one row per capture, refund or void, never updated; sequence orders a payment's entries
+CREATE TABLE payment_entries (
+    payment_id UUID NOT NULL REFERENCES payments (id),
+    sequence BIGINT GENERATED ALWAYS AS IDENTITY,
+    type VARCHAR(16) NOT NULL,
+    amount BIGINT NOT NULL CHECK (amount > 0),
+    created_at TIMESTAMPTZ NOT NULL,
+    PRIMARY KEY (payment_id, sequence)
+);
+
+-- the last entry folded into the balances, state and version on payments; later entries are pending
+ALTER TABLE payments ADD COLUMN ledger_position BIGINT NOT NULL DEFAULT 0;
+
+-- opening balances for payments captured before the ledger existed
+INSERT INTO payment_entries (payment_id, type, amount, created_at)
+SELECT id, 'CAPTURE', captured_amount, updated_at FROM payments WHERE captured_amount > 0
+UNION ALL
+SELECT id, 'REFUND', refunded_amount, updated_at FROM payments WHERE refunded_amount > 0
+ORDER BY 1, 2;
+
+UPDATE payments p
+SET ledger_position = e.position
+FROM (SELECT payment_id, max(sequence) AS position FROM payment_entries GROUP BY payment_id) e
+WHERE p.id = e.payment_id;
+
+-- payments with their pending entries applied: what every read should see
+CREATE VIEW payment_balances AS
+SELECT p.id, p.amount, p.currency, p.state,
+       p.captured_amount + pending.captured AS captured_amount,
+       p.refunded_amount + pending.refunded AS refunded_amount,
+       p.created_at,
+       coalesce(pending.last_at, p.updated_at) AS updated_at,
+       CAST(p.version + pending.entries AS INT) AS version,
+       CAST(pending.entries AS INT) AS pending_entries
+FROM payments p
+CROSS JOIN LATERAL (
+    SELECT coalesce(sum(e.amount) FILTER (WHERE e.type = 'CAPTURE'), 0) AS captured,
+           coalesce(sum(e.amount) FILTER (WHERE e.type = 'REFUND'), 0) AS refunded,
+           max(e.created_at) AS last_at,
+           count(*) AS entries
+    FROM payment_entries e
+    WHERE e.payment_id = p.id AND e.sequence > p.ledger_position
+) pending;
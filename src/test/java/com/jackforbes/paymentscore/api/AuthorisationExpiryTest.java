@@ -0,0 +1,165 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.service.AuthorisationExpiryVoider;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        "payments.authorisation.expiry.ttl=1d",
+        "payments.authorisation.expiry.batch-size=2",
+        "payments.authorisation.expiry.workers=3",
+        "payments.authorisation.expiry.interval=1h",
+        // the relay would drain the VOID events before they can be checked
+        "payments.outbox.enabled=false"
+})
+@AutoConfigureMockMvc
+class AuthorisationExpiryTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    AuthorisationExpiryVoider voider;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Test
+    void voidExpired_voidsOnlyStaleUncapturedAuthorisations() throws Exception {
+        String[] stale = new String[5];
+        for (int i = 0; i < stale.length; i++) {
+            stale[i] = authoriseAndExtractId(1000);
+            age(stale[i]);
+        }
+        String fresh = authoriseAndExtractId(1000);
+        String partlyCaptured = authoriseAndExtractId(1000);
+        capture(partlyCaptured, 100).andExpect(status().isOk());
+        age(partlyCaptured);
+        // polled before it expires, so the cached copy has to be replaced
+        mvc.perform(get("/payments/" + stale[0])).andExpect(jsonPath("$.state").value("AUTHORISED"));
+
+        double before = registry.counter("payments.authorisation.voided").count();
+        int voided = voider.voidExpired();
+
+        assertTrue(voided >= stale.length, "voided " + voided);
+        assertTrue(registry.counter("payments.authorisation.voided").count() - before >= stale.length);
+        for (String id : stale) {
+            assertEquals("VOIDED", state(id));
+            assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM payment_outbox WHERE payment_id = ? AND type = 'VOID'",
+                    Integer.class, UUID.fromString(id)));
+        }
+        assertEquals("AUTHORISED", state(fresh));
+        assertEquals("PARTIALLY_CAPTURED", state(partlyCaptured));
+
+        mvc.perform(get("/payments/" + stale[0]))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("VOIDED"));
+        capture(stale[0], 100)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.code").value("INVALID_TRANSITION"));
+    }
+
+    @Test
+    void voidExpired_skipsPaymentsLockedByALiveRequest() throws Exception {
+        String locked = authoriseAndExtractId(1000);
+        String free = authoriseAndExtractId(1000);
+        age(locked);
+        age(free);
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lock = connection.prepareStatement("SELECT 1 FROM payments WHERE id = ? FOR UPDATE")) {
+                lock.setObject(1, UUID.fromString(locked));
+                lock.execute();
+            }
+
+            voider.voidExpired();
+
+            assertEquals("VOIDED", state(free));
+            assertEquals("AUTHORISED", state(locked));
+            connection.rollback();
+        }
+
+        voider.voidExpired();
+        assertEquals("VOIDED", state(locked));
+    }
+
+    private void age(String paymentId) {
+        jdbc.update("UPDATE payments SET created_at = created_at - interval '2 days' WHERE id = ?", UUID.fromString(paymentId));
+    }
+
+    private String state(String paymentId) {
+        return jdbc.queryForObject("SELECT state::text FROM payments WHERE id = ?", String.class, UUID.fromString(paymentId));
+    }
+
+    private ResultActions capture(String paymentId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private String authoriseAndExtractId(long amount) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"GBP"}
+                                """.formatted(amount)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return JsonPath.read(response, "$.id");
+    }
+}
@@ -0,0 +1,173 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.repo.IdempotencyKeyPartitions;
+import com.jackforbes.paymentscore.service.IdempotencyKeySweeper;
+import com.jackforbes.paymentscore.service.IdempotencyPartitionMaintainer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        "payments.idempotency.retention.batch-size=2",
+        "payments.idempotency.retention.pause=0ms",
+        "payments.idempotency.retention.interval=1h",
+        "payments.idempotency.retention.clients.shortClient=1h",
+        "payments.idempotency.retention.clients.longClient=30d"
+})
+@AutoConfigureMockMvc
+class IdempotencyRetentionTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    IdempotencyKeySweeper sweeper;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Autowired
+    IdempotencyPartitionMaintainer maintainer;
+
+    @Autowired
+    IdempotencyKeyPartitions partitions;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void sweep_removesKeysPastTheirClientsRetention_inBatches() {
+        String run = UUID.randomUUID().toString();
+        insertKey("defaultClient", run + "-old-1", Duration.ofDays(8));
+        insertKey("defaultClient", run + "-old-2", Duration.ofDays(8));
+        insertKey("defaultClient", run + "-old-3", Duration.ofDays(9));
+        insertKey("defaultClient", run + "-recent", Duration.ofDays(1));
+        insertKey("shortClient", run + "-old", Duration.ofHours(2));
+        insertKey("shortClient", run + "-recent", Duration.ofMinutes(10));
+        insertKey("longClient", run + "-week", Duration.ofDays(8));
+        insertKey("longClient", run + "-month", Duration.ofDays(29));
+
+        int removed = sweeper.sweep();
+
+        // the longest retention is left to partition drops
+        assertTrue(removed >= 4, "removed " + removed);
+        assertEquals(List.of(
+                "defaultClient:" + run + "-recent",
+                "longClient:" + run + "-month",
+                "longClient:" + run + "-week",
+                "shortClient:" + run + "-recent"
+        ), remainingKeys(run));
+
+        assertTrue(registry.get("payments.idempotency.retention.deleted").tag("policy", "default").counter().count() >= 3);
+        assertEquals(0, registry.get("payments.idempotency.retention.lag").tag("policy", "default").timeGauge().value());
+        assertEquals(0, registry.get("payments.idempotency.retention.lag").tag("policy", "shortClient").timeGauge().value());
+    }
+
+    @Test
+    void maintain_keepsPartitionsAhead_andDropsDaysPastTheLongestRetention() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate expiredDay = today.minusDays(45);
+        String expired = IdempotencyKeyPartitions.nameOf(expiredDay);
+        jdbc.execute("CREATE TABLE " + expired + " PARTITION OF idempotency_keys FOR VALUES FROM ('"
+                + expiredDay + "') TO ('" + expiredDay.plusDays(1) + "')");
+        insertKey("defaultClient", UUID.randomUUID().toString(), Duration.ofDays(45));
+
+        maintainer.maintain();
+
+        var days = partitions.list().keySet();
+        assertFalse(days.contains(expiredDay));
+        assertTrue(days.contains(today.minusDays(30)));
+        assertTrue(days.contains(today.plusDays(7)));
+        assertEquals(0, jdbc.queryForObject("SELECT count(*) FROM pg_class WHERE relname = ?", Integer.class, expired));
+    }
+
+    @Test
+    void capture_keyClaimedOnAnEarlierDay_isStillTaken() throws Exception {
+        String paymentId = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":1000,"currency":"GBP"}
+                                """))
+                .andReturn().getResponse().getContentAsString()
+                .replaceAll(".*\"id\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+        String idemKey = UUID.randomUUID().toString();
+        insertKey("clientA", idemKey, UUID.fromString(paymentId), Duration.ofDays(2));
+
+        capture(paymentId, idemKey, 100)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.code").value("IDEMPOTENCY_KEY_REUSED"));
+        assertEquals(1, jdbc.queryForObject("SELECT count(*) FROM idempotency_keys WHERE idem_key = ?", Integer.class, idemKey));
+    }
+
+    private ResultActions capture(String paymentId, String idemKey, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", idemKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private void insertKey(String clientId, String idemKey, Duration age) {
+        insertKey(clientId, idemKey, UUID.randomUUID(), age);
+    }
+
+    private void insertKey(String clientId, String idemKey, UUID paymentId, Duration age) {
+        OffsetDateTime createdAt = OffsetDateTime.now(ZoneOffset.UTC).minus(age);
+        jdbc.update("""
+                        INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+                        VALUES (?, ?, ?, 200, ?, ?, ?)
+                        """,
+                clientId, idemKey, new byte[32], paymentId, createdAt, createdAt.toLocalDate());
+    }
+
+    private List<String> remainingKeys(String run) {
+        return jdbc.queryForList("""
+                        SELECT client_id || ':' || idem_key FROM idempotency_keys
+                        WHERE idem_key LIKE ? ORDER BY client_id, idem_key
+                        """,
+                String.class, run + "%");
+    }
+}
@@ -13,6 +13,10 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -60,6 +64,31 @@ class PaymentAuthoriseTest {
                 .andExpect(jsonPath("$.updatedAt").isNotEmpty());
     }
 
+    @Test
+    void authorise_assignsTimeOrderedIds() throws Exception {
+        UUID previous = null;
+        for (int i = 0; i < 20; i++) {
+            String response = mvc.perform(post("/payments/authorise")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {"amount":1234,"currency":"GBP"}
+                                    """))
+                    .andExpect(status().isCreated())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+
+            UUID id = UUID.fromString(JsonPath.read(response, "$.id"));
+            assertEquals(7, id.version());
+            assertEquals(2, id.variant());
+            if (previous != null) {
+                // v7 ids compare correctly as unsigned bytes, which is how PostgreSQL orders uuid
+                assertTrue(id.toString().compareTo(previous.toString()) > 0, id + " should sort after " + previous);
+            }
+            previous = id;
+        }
+    }
+
     @Test
     void get_returns200_forExistingPayment() throws Exception {
         String response = mvc.perform(post("/payments/authorise")
@@ -85,4 +114,101 @@ class PaymentAuthoriseTest {
         mvc.perform(get("/payments/00000000-0000-0000-0000-000000000000"))
                 .andExpect(status().isNotFound());
     }
-}
\ No newline at end of file
+
+    @Test
+    void authoriseBatch_storesValidItems_andReportsInvalidOnesPerItem() throws Exception {
+        String response = mvc.perform(post("/payments/authorise:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"items":[
+                                  {"amount":100,"currency":"GBP"},
+                                  {"amount":0,"currency":"GBP"},
+                                  {"amount":300,"currency":"eur"},
+                                  {"amount":400,"currency":"USD"}
+                                ]}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(2))
+                .andExpect(jsonPath("$.rejected").value(2))
+                .andExpect(jsonPath("$.failed").value(0))
+                .andExpect(jsonPath("$.items[0].status").value(201))
+                .andExpect(jsonPath("$.items[0].payment.amount").value(100))
+                .andExpect(jsonPath("$.items[0].payment.state").value("AUTHORISED"))
+                .andExpect(jsonPath("$.items[1].status").value(400))
+                .andExpect(jsonPath("$.items[1].errors[0]").value("amount: must be greater than 0"))
+                .andExpect(jsonPath("$.items[2].status").value(400))
+                .andExpect(jsonPath("$.items[2].errors[0]").value("currency: currency must be in ISO 4217"))
+                .andExpect(jsonPath("$.items[3].status").value(201))
+                .andExpect(jsonPath("$.items[3].payment.currency").value("USD"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        String id = JsonPath.read(response, "$.items[3].payment.id");
+
+        mvc.perform(get("/payments/" + id))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.amount").value(400))
+                .andExpect(jsonPath("$.state").value("AUTHORISED"));
+    }
+
+    @Test
+    void authoriseBatch_rejectsOversizedBatch_andStoresAFullOneAcrossChunks() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 1; i <= 1200; i++) {
+            items.append(i == 1 ? "" : ",").append("{\"amount\":").append(i).append(",\"currency\":\"GBP\"}");
+        }
+
+        mvc.perform(post("/payments/authorise:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[" + items + "]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"));
+
+        items.setLength(0);
+        for (int i = 1; i <= 1000; i++) {
+            items.append(i == 1 ? "" : ",").append("{\"amount\":").append(i).append(",\"currency\":\"GBP\"}");
+        }
+
+        mvc.perform(post("/payments/authorise:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[" + items + "]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(1000))
+                .andExpect(jsonPath("$.items[999].index").value(999))
+                .andExpect(jsonPath("$.items[999].payment.amount").value(1000));
+    }
+
+    @Test
+    void authoriseBatch_oversizedWithInvalidItems_isRejectedWhole() throws Exception {
+        // only 1000 of these are valid, so the cap must count the raw items
+        StringBuilder items = new StringBuilder();
+        for (int i = 1; i <= 1200; i++) {
+            items.append(i == 1 ? "" : ",").append(i <= 1000
+                    ? "{\"amount\":" + i + ",\"currency\":\"CHF\"}"
+                    : "{\"amount\":0,\"currency\":\"GBP\"}");
+        }
+
+        mvc.perform(post("/payments/authorise:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[" + items + "]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"))
+                .andExpect(jsonPath("$.items").doesNotExist());
+
+        mvc.perform(get("/payments").param("currency", "CHF"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(0));
+    }
+
+    @Test
+    void authoriseBatch_returns400_forEmptyBatch() throws Exception {
+        mvc.perform(post("/payments/authorise:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"items":[]}
+                                """))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("VALIDATION_ERROR"));
+    }
+}
@@ -0,0 +1,227 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+class PaymentBulkTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void captureBulk_appliesItemsInOrder_andReportsEachOutcome() throws Exception {
+        String first = authoriseAndExtractId(1000);
+        String second = authoriseAndExtractId(500);
+        String missing = UUID.randomUUID().toString();
+
+        captureBulk(item(first, "k1", 300), item(first, "k2", 700), item(second, "k3", 600),
+                item(missing, "k4", 1), item(second, "k5", 0))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fresh").value(2))
+                .andExpect(jsonPath("$.replayed").value(0))
+                .andExpect(jsonPath("$.rejected").value(3))
+                .andExpect(jsonPath("$.items[0].outcome").value("FRESH"))
+                .andExpect(jsonPath("$.items[0].payment.capturedAmount").value(300))
+                .andExpect(jsonPath("$.items[0].payment.state").value("PARTIALLY_CAPTURED"))
+                .andExpect(jsonPath("$.items[1].outcome").value("FRESH"))
+                .andExpect(jsonPath("$.items[1].payment.capturedAmount").value(1000))
+                .andExpect(jsonPath("$.items[1].payment.state").value("CAPTURED"))
+                .andExpect(jsonPath("$.items[2].outcome").value("REJECTED"))
+                .andExpect(jsonPath("$.items[2].status").value(409))
+                .andExpect(jsonPath("$.items[2].code").value("INVALID_TRANSITION"))
+                .andExpect(jsonPath("$.items[2].errors[0]").value("Capture would exceed authorised amount"))
+                .andExpect(jsonPath("$.items[3].status").value(404))
+                .andExpect(jsonPath("$.items[3].code").value("NOT_FOUND"))
+                .andExpect(jsonPath("$.items[4].status").value(400))
+                .andExpect(jsonPath("$.items[4].code").value("VALIDATION_ERROR"));
+
+        mvc.perform(get("/payments/" + first))
+                .andExpect(jsonPath("$.capturedAmount").value(1000))
+                .andExpect(jsonPath("$.state").value("CAPTURED"));
+        mvc.perform(get("/payments/" + second))
+                .andExpect(jsonPath("$.capturedAmount").value(0))
+                .andExpect(jsonPath("$.state").value("AUTHORISED"));
+
+        // the rejected item's key was released, so it can be used again
+        captureBulk(item(second, "k3", 500))
+                .andExpect(jsonPath("$.items[0].outcome").value("FRESH"))
+                .andExpect(jsonPath("$.items[0].payment.state").value("CAPTURED"));
+    }
+
+    @Test
+    void captureBulk_retried_replaysEveryItem_withoutCapturingTwice() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        String[] items = {item(paymentId, "r1", 100), item(paymentId, "r2", 200)};
+
+        captureBulk(items).andExpect(jsonPath("$.fresh").value(2));
+
+        captureBulk(items)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fresh").value(0))
+                .andExpect(jsonPath("$.replayed").value(2))
+                .andExpect(jsonPath("$.items[0].outcome").value("REPLAY"))
+                .andExpect(jsonPath("$.items[0].status").value(200))
+                .andExpect(jsonPath("$.items[0].payment.capturedAmount").value(300));
+
+        mvc.perform(get("/payments/" + paymentId)).andExpect(jsonPath("$.capturedAmount").value(300));
+    }
+
+    @Test
+    void captureBulk_sharesIdempotencyKeysWithTheSingleItemEndpoint() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+
+        mvc.perform(post("/payments/" + paymentId + "/capture")
+                        .header("X-Client-Id", "bulkClient")
+                        .header("Idempotency-Key", "shared-" + paymentId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":100}
+                                """))
+                .andExpect(status().isOk());
+
+        captureBulk(item(paymentId, "shared", 100), item(paymentId, "shared-other", 100))
+                .andExpect(jsonPath("$.items[0].outcome").value("REPLAY"))
+                .andExpect(jsonPath("$.items[1].outcome").value("FRESH"))
+                .andExpect(jsonPath("$.items[1].payment.capturedAmount").value(200));
+
+        captureBulk(item(paymentId, "shared", 999))
+                .andExpect(jsonPath("$.items[0].outcome").value("REJECTED"))
+                .andExpect(jsonPath("$.items[0].status").value(409))
+                .andExpect(jsonPath("$.items[0].code").value("IDEMPOTENCY_KEY_REUSED"));
+
+        mvc.perform(post("/payments/" + paymentId + "/capture")
+                        .header("X-Client-Id", "bulkClient")
+                        .header("Idempotency-Key", "shared-other-" + paymentId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":100}
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.capturedAmount").value(200));
+    }
+
+    @Test
+    void captureBulk_sameKeyTwiceInOneRequest_behavesLikeARetry() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+
+        captureBulk(item(paymentId, "dup", 100), item(paymentId, "dup", 100), item(paymentId, "dup", 200))
+                .andExpect(jsonPath("$.items[0].outcome").value("FRESH"))
+                .andExpect(jsonPath("$.items[1].outcome").value("REPLAY"))
+                .andExpect(jsonPath("$.items[1].payment.capturedAmount").value(100))
+                .andExpect(jsonPath("$.items[2].outcome").value("REJECTED"))
+                .andExpect(jsonPath("$.items[2].code").value("IDEMPOTENCY_KEY_REUSED"));
+    }
+
+    @Test
+    void refundBulk_followsRefundRules() throws Exception {
+        String captured = authoriseAndExtractId(1000);
+        String authorised = authoriseAndExtractId(1000);
+        captureBulk(item(captured, "c1", 1000)).andExpect(jsonPath("$.fresh").value(1));
+
+        mvc.perform(post("/payments/refund:bulk")
+                        .header("X-Client-Id", "bulkClient")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body(item(captured, "f1", 400), item(captured, "f2", 600), item(authorised, "f3", 1))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].payment.state").value("PARTIALLY_REFUNDED"))
+                .andExpect(jsonPath("$.items[1].payment.state").value("REFUNDED"))
+                .andExpect(jsonPath("$.items[1].payment.refundedAmount").value(1000))
+                .andExpect(jsonPath("$.items[2].code").value("INVALID_TRANSITION"))
+                .andExpect(jsonPath("$.items[2].errors[0]").value("Illegal refund in state AUTHORISED"));
+    }
+
+    @Test
+    void captureBulk_returns400_forEmptyItems_andMissingClientId() throws Exception {
+        captureBulk().andExpect(status().isBadRequest());
+
+        mvc.perform(post("/payments/capture:bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body(item(UUID.randomUUID().toString(), "x", 1))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void captureBulk_oversizedWithInvalidItems_isRejectedWhole() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        // one valid item and 1000 invalid ones: over the cap however few are valid
+        String[] items = new String[1001];
+        items[0] = item(paymentId, "oversized", 100);
+        for (int i = 1; i < items.length; i++) {
+            items[i] = item(paymentId, "invalid-" + i, 0);
+        }
+
+        captureBulk(items)
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"))
+                .andExpect(jsonPath("$.items").doesNotExist());
+
+        mvc.perform(get("/payments/" + paymentId))
+                .andExpect(jsonPath("$.capturedAmount").value(0));
+    }
+
+    private ResultActions captureBulk(String... items) throws Exception {
+        return mvc.perform(post("/payments/capture:bulk")
+                .header("X-Client-Id", "bulkClient")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body(items)));
+    }
+
+    private static String body(String... items) {
+        return "{\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    private static String item(String paymentId, String idemKey, long amount) {
+        // keys are per test run so reruns against the same database don't replay
+        return """
+                {"paymentId":"%s","idempotencyKey":"%s","amount":%d}""".formatted(paymentId, idemKey + "-" + paymentId, amount);
+    }
+
+    private String authoriseAndExtractId(long amount) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"GBP"}
+                                """.formatted(amount)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return JsonPath.read(response, "$.id");
+    }
+}
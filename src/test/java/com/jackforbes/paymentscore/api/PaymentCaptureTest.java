@@ -173,6 +173,43 @@ class PaymentCaptureTest {
         org.junit.jupiter.api.Assertions.assertEquals(first, second);
     }
 
+    @Test
+    void get_withCurrentETag_returns304_untilTheNextCapture() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+
+        String etag = mvc.perform(get("/payments/" + paymentId))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + paymentId + "-0\""))
+                .andReturn()
+                .getResponse()
+                .getHeader("ETag");
+
+        mvc.perform(get("/payments/" + paymentId).header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+
+        mvc.perform(post("/payments/" + paymentId + "/capture")
+                        .header("X-Client-Id", "clientA")
+                        .header("Idempotency-Key", UUID.randomUUID().toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":100}
+                                """))
+                .andExpect(status().isOk());
+
+        mvc.perform(get("/payments/" + paymentId).header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + paymentId + "-1\""))
+                .andExpect(jsonPath("$.capturedAmount").value(100));
+    }
+
+    @Test
+    void get_withIfNoneMatch_returns404_forNonExistingPayment() throws Exception {
+        mvc.perform(get("/payments/00000000-0000-0000-0000-000000000000").header("If-None-Match", "\"x\""))
+                .andExpect(status().isNotFound());
+    }
+
     private String authoriseAndExtractId(long amount, String currency) throws Exception {
         String response = mvc.perform(post("/payments/authorise")
                         .contentType(MediaType.APPLICATION_JSON)
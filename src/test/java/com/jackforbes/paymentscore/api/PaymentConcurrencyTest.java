@@ -12,9 +12,12 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
 
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -41,7 +44,7 @@ class PaymentConcurrencyTest {
     @Autowired MockMvc mvc;
 
     @Test
-    void concurrent_captures_oneWins_otherGets409ConcurrentModification() throws Exception {
+    void concurrent_captures_oneWins_otherGets409() throws Exception {
         String paymentId = authoriseAndExtractId(1000, "GBP");
 
         CountDownLatch ready = new CountDownLatch(2);
@@ -72,14 +75,79 @@ class PaymentConcurrencyTest {
         );
     }
 
+    @Test
+    void concurrent_partialCaptures_withinAuthorisedAmount_allSucceed() throws Exception {
+        String paymentId = authoriseAndExtractId(1000, "GBP");
+        int requests = 10;
+
+        CountDownLatch ready = new CountDownLatch(requests);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(requests);
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(pool.submit(() -> doConcurrentCapture(paymentId, ready, start, 100)));
+        }
+
+        ready.await(5, TimeUnit.SECONDS);
+        start.countDown();
+
+        for (Future<Integer> f : futures) {
+            org.junit.jupiter.api.Assertions.assertEquals(200, f.get(10, TimeUnit.SECONDS));
+        }
+
+        pool.shutdownNow();
+
+        mvc.perform(get("/payments/" + paymentId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("CAPTURED"))
+                .andExpect(jsonPath("$.capturedAmount").value(1000));
+    }
+
+    @Test
+    void concurrent_duplicates_withSameIdempotencyKey_captureOnce_andAllSucceed() throws Exception {
+        String paymentId = authoriseAndExtractId(1000, "GBP");
+        String idemKey = UUID.randomUUID().toString();
+        int requests = 5;
+
+        CountDownLatch ready = new CountDownLatch(requests);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(requests);
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(pool.submit(() -> doConcurrentCapture(paymentId, idemKey, ready, start, 100)));
+        }
+
+        ready.await(5, TimeUnit.SECONDS);
+        start.countDown();
+
+        for (Future<Integer> f : futures) {
+            org.junit.jupiter.api.Assertions.assertEquals(200, f.get(10, TimeUnit.SECONDS));
+        }
+
+        pool.shutdownNow();
+
+        mvc.perform(get("/payments/" + paymentId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("PARTIALLY_CAPTURED"))
+                .andExpect(jsonPath("$.capturedAmount").value(100));
+    }
+
     private int doConcurrentCapture(String paymentId, CountDownLatch ready, CountDownLatch start, long amount) throws Exception {
+        return doConcurrentCapture(paymentId, UUID.randomUUID().toString(), ready, start, amount);
+    }
+
+    private int doConcurrentCapture(String paymentId, String idemKey, CountDownLatch ready, CountDownLatch start, long amount) throws Exception {
         ready.countDown();
         start.await(5, TimeUnit.SECONDS);
 
         // Perform and return status
         return mvc.perform(post("/payments/" + paymentId + "/capture")
                         .header("X-Client-Id", "clientA")
-                        .header("Idempotency-Key", UUID.randomUUID().toString())
+                        .header("Idempotency-Key", idemKey)
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("""
                                 {"amount":%d}
@@ -0,0 +1,164 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.entity.PaymentState;
+import com.jackforbes.paymentscore.service.PaymentEventBus;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        "payments.events.buffer-size=4",
+        "payments.events.heartbeat=200ms"
+})
+@AutoConfigureMockMvc
+class PaymentEventStreamTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    PaymentEventBus eventBus;
+
+    @Test
+    void events_sendCurrentStateThenEachChange_andEndOnceRefunded() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        int subscribers = eventBus.subscribers();
+
+        MockHttpServletResponse stream = subscribe(get("/payments/" + paymentId + "/events"));
+        await().until(() -> stream.getContentAsString().contains("\"state\":\"AUTHORISED\""));
+
+        capture(paymentId, "sseClientA", 1000).andExpect(status().isOk());
+        await().until(() -> stream.getContentAsString().contains("\"state\":\"CAPTURED\""));
+
+        refund(paymentId, 1000).andExpect(status().isOk());
+        await().until(() -> stream.getContentAsString().contains("\"state\":\"REFUNDED\""));
+        await().until(() -> eventBus.subscribers() == subscribers);
+
+        String content = stream.getContentAsString();
+        assertEquals(3, content.split("event:payment").length - 1, content);
+        assertFalse(content.contains("\"version\""));
+    }
+
+    @Test
+    void clientEvents_carryOnlyThatClientsChanges() throws Exception {
+        String mine = authoriseAndExtractId(1000);
+        String theirs = authoriseAndExtractId(1000);
+
+        MockHttpServletResponse stream = subscribe(get("/payments/events").header("X-Client-Id", "sseClientB"));
+
+        capture(theirs, "sseClientC", 100).andExpect(status().isOk());
+        capture(mine, "sseClientB", 100).andExpect(status().isOk());
+
+        await().until(() -> stream.getContentAsString().contains(mine));
+        assertFalse(stream.getContentAsString().contains(theirs));
+    }
+
+    @Test
+    void clientEvents_sendHeartbeatsWhileIdle() throws Exception {
+        MockHttpServletResponse stream = subscribe(get("/payments/events").header("X-Client-Id", "sseQuietClient"));
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> stream.getContentAsString().contains(":heartbeat"));
+    }
+
+    @Test
+    void events_unknownPayment_isNotFound() throws Exception {
+        mvc.perform(get("/payments/" + UUID.randomUUID() + "/events").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void slowSubscriber_isEvictedOnceItsBufferIsFull() {
+        UUID paymentId = UUID.randomUUID();
+        PaymentEventBus.Subscription slow = eventBus.subscribeToPayment(paymentId);
+
+        for (int version = 1; version <= 5; version++) {
+            eventBus.publish("sseClientD", new PaymentResponse(paymentId, 1000, "GBP", PaymentState.PARTIALLY_CAPTURED,
+                    version, 0, Instant.now(), Instant.now(), version));
+        }
+
+        assertTrue(slow.isEvicted());
+        assertTrue(slow.isClosed());
+    }
+
+    private MockHttpServletResponse subscribe(RequestBuilder builder) throws Exception {
+        return mvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn()
+                .getResponse();
+    }
+
+    private ResultActions capture(String paymentId, String clientId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", clientId)
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private ResultActions refund(String paymentId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/refund")
+                .header("X-Client-Id", "sseClientA")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private String authoriseAndExtractId(long amount) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"GBP"}
+                                """.formatted(amount)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return JsonPath.read(response, "$.id");
+    }
+}
@@ -0,0 +1,234 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        "payments.ledger.compact-every=3"
+})
+@AutoConfigureMockMvc
+class PaymentLedgerTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Test
+    void history_listsEntriesWithRunningBalances_inPages() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        capture(paymentId, 100).andExpect(status().isOk());
+        capture(paymentId, 200).andExpect(status().isOk());
+        capture(paymentId, 300).andExpect(status().isOk());
+        refund(paymentId, 50).andExpect(status().isOk());
+
+        String firstPage = mvc.perform(get("/payments/" + paymentId + "/history").param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.paymentId").value(paymentId))
+                .andExpect(jsonPath("$.amount").value(1000))
+                .andExpect(jsonPath("$.currency").value("GBP"))
+                .andExpect(jsonPath("$.entries.length()").value(3))
+                .andExpect(jsonPath("$.entries[0].type").value("CAPTURE"))
+                .andExpect(jsonPath("$.entries[0].amount").value(100))
+                .andExpect(jsonPath("$.entries[0].capturedAmount").value(100))
+                .andExpect(jsonPath("$.entries[2].capturedAmount").value(600))
+                .andExpect(jsonPath("$.entries[2].refundedAmount").value(0))
+                .andExpect(jsonPath("$.nextAfter").isNumber())
+                .andReturn().getResponse().getContentAsString();
+
+        Number nextAfter = JsonPath.read(firstPage, "$.nextAfter");
+        mvc.perform(get("/payments/" + paymentId + "/history")
+                        .param("after", nextAfter.toString())
+                        .param("limit", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.entries.length()").value(1))
+                .andExpect(jsonPath("$.entries[0].type").value("REFUND"))
+                .andExpect(jsonPath("$.entries[0].amount").value(50))
+                .andExpect(jsonPath("$.entries[0].capturedAmount").value(600))
+                .andExpect(jsonPath("$.entries[0].refundedAmount").value(50))
+                .andExpect(jsonPath("$.nextAfter").doesNotExist());
+    }
+
+    @Test
+    void partialCaptures_leaveThePaymentRowAlone_untilCompactEvery() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        // a state change is folded straight away
+        capture(paymentId, 10).andExpect(status().isOk());
+        Map<String, Object> folded = row(paymentId);
+        assertEquals(10L, folded.get("captured_amount"));
+
+        capture(paymentId, 10).andExpect(status().isOk());
+        capture(paymentId, 10)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.capturedAmount").value(30));
+        Map<String, Object> pending = row(paymentId);
+        assertEquals(folded, pending);
+        assertEquals(2, jdbc.queryForObject("SELECT pending_entries FROM payment_balances WHERE id = ?",
+                Integer.class, UUID.fromString(paymentId)));
+
+        capture(paymentId, 10).andExpect(status().isOk());
+        Map<String, Object> compacted = row(paymentId);
+        assertEquals(40L, compacted.get("captured_amount"));
+        assertEquals((int) folded.get("version") + 3, compacted.get("version"));
+        assertEquals(0, jdbc.queryForObject("SELECT pending_entries FROM payment_balances WHERE id = ?",
+                Integer.class, UUID.fromString(paymentId)));
+    }
+
+    @Test
+    void guards_countPendingEntries() throws Exception {
+        String paymentId = authoriseAndExtractId(100);
+        capture(paymentId, 40).andExpect(status().isOk());
+        capture(paymentId, 40).andExpect(status().isOk());
+
+        // only 40 is in the payments row, the other 40 is still pending
+        capture(paymentId, 30)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.code").value("INVALID_TRANSITION"));
+        capture(paymentId, 20)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("CAPTURED"));
+
+        refund(paymentId, 60).andExpect(status().isOk());
+        refund(paymentId, 30).andExpect(status().isOk());
+        refund(paymentId, 20)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.code").value("INVALID_TRANSITION"));
+        refund(paymentId, 10)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state").value("REFUNDED"))
+                .andExpect(jsonPath("$.refundedAmount").value(100));
+
+        assertEquals(6, jdbc.queryForObject("SELECT count(*) FROM payment_entries WHERE payment_id = ?",
+                Integer.class, UUID.fromString(paymentId)));
+    }
+
+    @Test
+    void concurrentCaptures_neverExceedTheAuthorisedAmount() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        int requests = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(requests);
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return capture(paymentId, 200).andReturn().getResponse().getStatus();
+            }));
+        }
+        start.countDown();
+
+        int succeeded = 0;
+        for (Future<Integer> f : futures) {
+            if (f.get(10, TimeUnit.SECONDS) == 200) {
+                succeeded++;
+            }
+        }
+        pool.shutdownNow();
+
+        assertEquals(5, succeeded);
+        mvc.perform(get("/payments/" + paymentId + "/history"))
+                .andExpect(jsonPath("$.entries.length()").value(5))
+                .andExpect(jsonPath("$.entries[4].capturedAmount").value(1000));
+        assertEquals(1000L, row(paymentId).get("captured_amount"));
+    }
+
+    @Test
+    void history_unknownPayment_isNotFound() throws Exception {
+        mvc.perform(get("/payments/" + UUID.randomUUID() + "/history"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void history_limitOutOfRange_isInvalidInput() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        mvc.perform(get("/payments/" + paymentId + "/history").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"));
+    }
+
+    // the stored snapshot, without pending entries applied
+    private Map<String, Object> row(String paymentId) {
+        return jdbc.queryForMap("SELECT state, captured_amount, refunded_amount, version, ledger_position FROM payments WHERE id = ?",
+                UUID.fromString(paymentId));
+    }
+
+    private ResultActions capture(String paymentId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private ResultActions refund(String paymentId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/refund")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private String authoriseAndExtractId(long amount) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"GBP"}
+                                """.formatted(amount)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return JsonPath.read(response, "$.id");
+    }
+}
@@ -0,0 +1,223 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+class PaymentListingTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void list_walksAllPagesInCreationOrder() throws Exception {
+        Instant from = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        List<String> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            created.add(authoriseAndExtractId(100 + i, "NOK"));
+        }
+        Instant to = Instant.now().plusSeconds(1);
+
+        List<String> listed = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            var request = get("/payments")
+                    .param("currency", "NOK")
+                    .param("from", from.toString())
+                    .param("to", to.toString())
+                    .param("limit", "2");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            String page = mvc.perform(request)
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+            listed.addAll(JsonPath.read(page, "$.items[*].id"));
+            cursor = JsonPath.read(page, "$.nextCursor");
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(created, listed);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void list_filtersByState() throws Exception {
+        Instant from = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        authoriseAndExtractId(500, "SEK");
+        String captured = authoriseAndExtractId(500, "SEK");
+        mvc.perform(post("/payments/" + captured + "/capture")
+                        .header("X-Client-Id", "clientA")
+                        .header("Idempotency-Key", UUID.randomUUID().toString())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":500}
+                                """))
+                .andExpect(status().isOk());
+
+        String page = mvc.perform(get("/payments")
+                        .param("state", "CAPTURED")
+                        .param("currency", "SEK")
+                        .param("from", from.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].state").value("CAPTURED"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<String> ids = JsonPath.read(page, "$.items[*].id");
+        assertEquals(List.of(captured), ids);
+        assertNull(JsonPath.read(page, "$.nextCursor"));
+    }
+
+    @Test
+    void list_rejectsBadParameters() throws Exception {
+        mvc.perform(get("/payments").param("state", "PENDING"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"));
+        mvc.perform(get("/payments").param("limit", "501"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"));
+        mvc.perform(get("/payments").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"));
+    }
+
+    @Test
+    void export_streamsMatchingPaymentsAsNdjson() throws Exception {
+        Instant from = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        List<String> created = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            created.add(authoriseAndExtractId(700 + i, "DKK"));
+        }
+
+        MvcResult started = mvc.perform(get("/payments/export")
+                        .param("currency", "DKK")
+                        .param("from", from.toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<String> lines = body.lines().toList();
+        assertEquals(created, lines.stream().map(line -> (String) JsonPath.read(line, "$.id")).toList());
+        assertEquals(702, (int) JsonPath.read(lines.get(2), "$.amount"));
+    }
+
+    @Test
+    void export_gzipsWhenAccepted() throws Exception {
+        Instant from = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        String id = authoriseAndExtractId(800, "PLN");
+
+        MvcResult started = mvc.perform(get("/payments/export")
+                        .param("currency", "PLN")
+                        .param("from", from.toString())
+                        .header("Accept-Encoding", "gzip"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        byte[] body = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn()
+                .getResponse()
+                .getContentAsByteArray();
+
+        String lines = new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(id, JsonPath.read(lines.strip(), "$.id"));
+    }
+
+    @Test
+    void export_staysPlain_whenGzipIsRefusedWithQZero() throws Exception {
+        Instant from = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        String id = authoriseAndExtractId(900, "HUF");
+
+        MvcResult started = mvc.perform(get("/payments/export")
+                        .param("currency", "HUF")
+                        .param("from", from.toString())
+                        .header("Accept-Encoding", "gzip;q=0, identity"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertEquals(id, JsonPath.read(body.strip(), "$.id"));
+    }
+
+    @Test
+    void export_rejectsAnEmptyRange_beforeStreaming() throws Exception {
+        mvc.perform(get("/payments/export")
+                        .param("from", "2026-10-02T00:00:00Z")
+                        .param("to", "2026-10-01T00:00:00Z"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code").value("INVALID_INPUT"));
+    }
+
+    private String authoriseAndExtractId(long amount, String currency) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"%s"}
+                                """.formatted(amount, currency)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return JsonPath.read(response, "$.id");
+    }
+}
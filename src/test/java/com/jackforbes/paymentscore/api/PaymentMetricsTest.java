@@ -0,0 +1,90 @@
+package com.jackforbes.paymentscore.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+class PaymentMetricsTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Test
+    void prometheus_exposesOperationTimersByOutcome_andErrorCounters() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+        String idemKey = UUID.randomUUID().toString();
+
+        capture(paymentId, idemKey, 100).andExpect(status().isOk());
+        capture(paymentId, idemKey, 100).andExpect(status().isOk());
+        capture(paymentId, idemKey, 200).andExpect(status().isConflict());
+        mvc.perform(get("/payments/" + UUID.randomUUID())).andExpect(status().isNotFound());
+
+        mvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("payments_operation_seconds_count{application=\"paymentscore\",operation=\"authorise\",outcome=\"fresh\"}")))
+                .andExpect(content().string(containsString("payments_operation_seconds_count{application=\"paymentscore\",operation=\"capture\",outcome=\"fresh\"}")))
+                .andExpect(content().string(containsString("payments_operation_seconds_count{application=\"paymentscore\",operation=\"capture\",outcome=\"replay\"}")))
+                .andExpect(content().string(containsString("payments_operation_seconds_count{application=\"paymentscore\",operation=\"capture\",outcome=\"mismatch\"}")))
+                .andExpect(content().string(containsString("payments_operation_seconds_count{application=\"paymentscore\",operation=\"get\",outcome=\"not_found\"}")))
+                .andExpect(content().string(containsString("payments_db_seconds_bucket{application=\"paymentscore\",operation=\"capture\"")))
+                .andExpect(content().string(containsString("payments_api_errors_total{application=\"paymentscore\",code=\"IDEMPOTENCY_KEY_REUSED\",status=\"409\"}")));
+    }
+
+    private ResultActions capture(String paymentId, String idemKey, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", idemKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private String authoriseAndExtractId(long amount, String currency) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"%s"}
+                                """.formatted(amount, currency)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return response.replaceAll(".*\"id\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+}
@@ -0,0 +1,175 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.service.OutboxRelay;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        "payments.outbox.sink=file",
+        // runs are started by the tests
+        "payments.outbox.interval=1h"
+})
+@AutoConfigureMockMvc
+class PaymentOutboxTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    static final Path EVENTS = tempDir().resolve("payment-events.ndjson");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+        registry.add("payments.outbox.file", EVENTS::toString);
+    }
+
+    @Autowired
+    OutboxRelay relay;
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Test
+    void stateChanges_arePublishedInOrderAndRemovedFromTheOutbox() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        capture(paymentId, 600).andExpect(status().isOk());
+        // rejected, so nothing to publish
+        capture(paymentId, 600).andExpect(status().isConflict());
+        mvc.perform(post("/payments/capture:bulk")
+                        .header("X-Client-Id", "clientA")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"items":[{"paymentId":"%s","idempotencyKey":"%s","amount":100},
+                                          {"paymentId":"%s","idempotencyKey":"%s","amount":300}]}
+                                """.formatted(paymentId, UUID.randomUUID(), paymentId, UUID.randomUUID())))
+                .andExpect(status().isOk());
+        refund(paymentId, 250).andExpect(status().isOk());
+
+        relay.relay();
+
+        List<String> events = eventsFor(paymentId);
+        assertEquals(4, events.size());
+        assertEvent(events.get(0), "CAPTURE", 600, "PARTIALLY_CAPTURED", 1);
+        assertEvent(events.get(1), "CAPTURE", 100, "PARTIALLY_CAPTURED", 2);
+        assertEvent(events.get(2), "CAPTURE", 300, "CAPTURED", 3);
+        assertEvent(events.get(3), "REFUND", 250, "PARTIALLY_REFUNDED", 4);
+        assertEquals(0, outboxSize(paymentId));
+    }
+
+    @Test
+    void failedPublish_leavesTheBatchInTheOutbox() throws Exception {
+        String paymentId = authoriseAndExtractId(1000);
+        capture(paymentId, 100).andExpect(status().isOk());
+
+        Path moved = EVENTS.resolveSibling("moved.ndjson");
+        Files.deleteIfExists(moved);
+        if (Files.exists(EVENTS)) {
+            Files.move(EVENTS, moved);
+        }
+        // a directory in the file's place makes every append fail
+        Files.createDirectory(EVENTS);
+        try {
+            assertEquals(0, relay.relay());
+            assertEquals(1, outboxSize(paymentId));
+        } finally {
+            Files.delete(EVENTS);
+        }
+
+        relay.relay();
+        assertEquals(0, outboxSize(paymentId));
+        assertEquals(1, eventsFor(paymentId).size());
+    }
+
+    private static void assertEvent(String json, String type, long amount, String state, int version) {
+        assertEquals(type, JsonPath.read(json, "$.type"));
+        assertEquals(amount, ((Number) JsonPath.read(json, "$.amount")).longValue());
+        assertEquals(state, JsonPath.read(json, "$.state"));
+        assertEquals(version, (int) JsonPath.read(json, "$.version"));
+    }
+
+    private List<String> eventsFor(String paymentId) throws IOException {
+        return Files.readAllLines(EVENTS).stream()
+                .filter(line -> line.contains(paymentId))
+                .toList();
+    }
+
+    private int outboxSize(String paymentId) {
+        return jdbc.queryForObject("SELECT count(*) FROM payment_outbox WHERE payment_id = ?", Integer.class, UUID.fromString(paymentId));
+    }
+
+    private ResultActions capture(String paymentId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private ResultActions refund(String paymentId, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/refund")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", UUID.randomUUID().toString())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private String authoriseAndExtractId(long amount) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"GBP"}
+                                """.formatted(amount)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return JsonPath.read(response, "$.id");
+    }
+
+    private static Path tempDir() {
+        try {
+            return Files.createTempDirectory("payment-outbox");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
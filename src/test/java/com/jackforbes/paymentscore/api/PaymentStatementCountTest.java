@@ -0,0 +1,282 @@
+package com.jackforbes.paymentscore.api;
+
+import com.jackforbes.paymentscore.service.RequestHasher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+class PaymentStatementCountTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+            .withDatabaseName("payments")
+            .withUsername("payments")
+            .withPassword("payments");
+
+    @DynamicPropertySource
+    static void registerProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("spring.flyway.enabled", () -> true);
+        registry.add("spring.docker.compose.enabled", () -> false);
+    }
+
+    /*
+    Counts statements prepared on any pooled connection, so JPA and plain JDBC access are both seen, but only
+    on the thread that called reset(): MockMvc serves the request on it, while the outbox relay, voider and
+    partition maintainer run on scheduler threads and share the pool.
+     */
+    @TestConfiguration
+    static class StatementCounting {
+
+        static final AtomicInteger prepared = new AtomicInteger();
+        private static volatile Thread countedThread;
+
+        static void reset() {
+            countedThread = Thread.currentThread();
+            prepared.set(0);
+        }
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource dataSource)) {
+                        return bean;
+                    }
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSource.class},
+                            (proxy, method, args) -> {
+                                Object result = invoke(dataSource, method, args);
+                                return result instanceof Connection connection ? counting(connection) : result;
+                            });
+                }
+            };
+        }
+
+        private static Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(StatementCounting.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ((method.getName().startsWith("prepare") || method.getName().equals("createStatement"))
+                                && Thread.currentThread() == countedThread) {
+                            prepared.incrementAndGet();
+                        }
+                        return invoke(connection, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Autowired
+    MockMvc mvc;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    RequestHasher requestHasher;
+
+    @Test
+    void authorise_isASingleInsert() throws Exception {
+        StatementCounting.reset();
+        authoriseAndExtractId(1234, "GBP");
+
+        assertEquals(1, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void capture_claimsThenAppends_withoutReadingThePaymentBack() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+
+        StatementCounting.reset();
+        capture(paymentId, UUID.randomUUID().toString(), 100)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.capturedAmount").value(100))
+                .andExpect(jsonPath("$.state").value("PARTIALLY_CAPTURED"));
+
+        // key claim and row lock, then guarded ledger append and response
+        assertEquals(2, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void capture_replay_isServedFromTheKeyCacheWithOneRead() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+        String idemKey = UUID.randomUUID().toString();
+        capture(paymentId, idemKey, 100).andExpect(status().isOk());
+
+        StatementCounting.reset();
+        capture(paymentId, idemKey, 100)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.capturedAmount").value(100));
+
+        // the key cache answers the replay, then the payment_balances snapshot is read
+        assertEquals(1, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void capture_replay_withAColdKeyCache_isServedByTheClaimStatementAlone() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+        String idemKey = UUID.randomUUID().toString();
+        // stored as if another instance had served the first request, so this one's key cache never saw it
+        OffsetDateTime createdAt = OffsetDateTime.now(ZoneOffset.UTC);
+        jdbc.update("""
+                        INSERT INTO idempotency_keys (client_id, idem_key, request_hash, response_status, payment_id, created_at, created_on)
+                        VALUES (?, ?, ?, 200, ?, ?, ?)
+                        """,
+                "clientA", idemKey, requestHasher.hash(RequestHasher.Operation.CAPTURE, UUID.fromString(paymentId), 100),
+                UUID.fromString(paymentId), createdAt, createdAt.toLocalDate());
+
+        StatementCounting.reset();
+        capture(paymentId, idemKey, 100)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(paymentId));
+
+        // the claim finds the stored key and returns the payment with it
+        assertEquals(1, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void capture_keyReusedWithDifferentRequest_isRejectedWithoutQueryingIdempotencyKeys() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+        String idemKey = UUID.randomUUID().toString();
+        capture(paymentId, idemKey, 100).andExpect(status().isOk());
+
+        StatementCounting.reset();
+        capture(paymentId, idemKey, 200)
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.code").value("IDEMPOTENCY_KEY_REUSED"));
+
+        assertEquals(0, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void authoriseBatch_insertsAChunkWithOneBatchedStatement() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 1; i <= 200; i++) {
+            items.append(i == 1 ? "" : ",").append("{\"amount\":").append(i).append(",\"currency\":\"GBP\"}");
+        }
+
+        StatementCounting.reset();
+        mvc.perform(post("/payments/authorise:batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[" + items + "]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created").value(200));
+
+        assertEquals(1, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void captureBulk_usesSetBasedStatements_howeverManyItems() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            String paymentId = authoriseAndExtractId(1234, "GBP");
+            items.append(i == 0 ? "" : ",").append("""
+                    {"paymentId":"%s","idempotencyKey":"%s","amount":100}""".formatted(paymentId, UUID.randomUUID()));
+        }
+
+        StatementCounting.reset();
+        mvc.perform(post("/payments/capture:bulk")
+                        .header("X-Client-Id", "clientA")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"items\":[" + items + "]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.fresh").value(100));
+
+        // claim keys, lock payments, read their balances, append entries
+        assertEquals(4, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void get_repeatedPolls_areServedFromTheCache() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+
+        StatementCounting.reset();
+        for (int i = 0; i < 3; i++) {
+            mvc.perform(get("/payments/" + paymentId))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.state").value("AUTHORISED"));
+        }
+
+        assertEquals(0, StatementCounting.prepared.get());
+    }
+
+    @Test
+    void get_afterCapture_returnsTheCommittedStateWithoutReading() throws Exception {
+        String paymentId = authoriseAndExtractId(1234, "GBP");
+        mvc.perform(get("/payments/" + paymentId)).andExpect(status().isOk());
+        capture(paymentId, UUID.randomUUID().toString(), 100).andExpect(status().isOk());
+
+        StatementCounting.reset();
+        mvc.perform(get("/payments/" + paymentId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.capturedAmount").value(100))
+                .andExpect(jsonPath("$.state").value("PARTIALLY_CAPTURED"))
+                .andExpect(jsonPath("$.version").doesNotExist());
+
+        assertEquals(0, StatementCounting.prepared.get());
+    }
+
+    private ResultActions capture(String paymentId, String idemKey, long amount) throws Exception {
+        return mvc.perform(post("/payments/" + paymentId + "/capture")
+                .header("X-Client-Id", "clientA")
+                .header("Idempotency-Key", idemKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"amount":%d}
+                        """.formatted(amount)));
+    }
+
+    private String authoriseAndExtractId(long amount, String currency) throws Exception {
+        String response = mvc.perform(post("/payments/authorise")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"amount":%d,"currency":"%s"}
+                                """.formatted(amount, currency)))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return response.replaceAll(".*\"id\"\\s*:\\s*\"([^\"]+)\".*", "$1");
+    }
+}